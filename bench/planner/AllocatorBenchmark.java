@@ -0,0 +1,456 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A standalone benchmark of the allocation searches on randomly generated
+ * instances. It is kept out of the library's source tree, and is compiled
+ * against it and run as
+ * </p>
+ *
+ * <pre>
+ * javac -d classes src/planner/*.java bench/planner/*.java
+ * java -cp classes planner.AllocatorBenchmark [seed]
+ * </pre>
+ *
+ * <p>
+ * It prints three tables:
+ * </p>
+ *
+ * <ol>
+ * <li>The original exhaustive search (which builds the set of every safe
+ * allocation and returns one of them), the first-solution depth-first search
+ * over maps and Traffic objects that replaced it, and Allocator.allocate, on
+ * small instances, checking that all three agree on whether there is a safe
+ * allocation.</li>
+ * <li>Allocator's search with each search option changed in turn from the
+ * defaults, on larger instances: the time taken, the nodes visited, and the
+ * number of instances that did not finish within the time limit.</li>
+ * <li>The whole-record operations of Traffic on a dense record with many
+ * corridors, against doing the same work one corridor at a time through the
+ * public methods of Traffic.</li>
+ * </ol>
+ *
+ * <p>
+ * The instances depend only on the seed (zero by default), so a run can be
+ * repeated; the timings of course depend on the machine. Each search of the
+ * first table is run over all of its instances again and again until the
+ * time of a round settles, so that its time does not include compiling the
+ * search; the other tables are run once untimed first, for the same reason.
+ * </p>
+ */
+public class AllocatorBenchmark {
+
+    // the number of instances in each table row
+    private final static int INSTANCES = 20;
+    // the number of instances used to warm up before the second table
+    private final static int WARM_UP_INSTANCES = 3;
+    // the least and greatest number of rounds of each search of the first
+    // table
+    private final static int MIN_ROUNDS = 5;
+    private final static int MAX_ROUNDS = 50;
+    // the greatest relative change between the times of the last two
+    // rounds for the time to have settled
+    private final static double SETTLED = 0.05;
+    // the number of events and venues of the small instances
+    private final static int SMALL_EVENTS = 5;
+    private final static int SMALL_VENUES = 10;
+    // the number of events and venues of the larger instances
+    private final static int LARGE_EVENTS = 14;
+    private final static int LARGE_VENUES = 24;
+    // the number of corridors shared by the venues of an instance
+    private final static int CORRIDORS = 8;
+    // the time allowed for each larger instance, in milliseconds
+    private final static long TIME_LIMIT = 2000;
+    // the number of corridors of the dense Traffic record
+    private final static int DENSE_CORRIDORS = 4000;
+    // the number of times each Traffic operation is repeated
+    private final static int TRAFFIC_REPEATS = 20000;
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private AllocatorBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark, with the seed given as the first argument, if any.
+     *
+     * @param args
+     *            the seed of the instances, or nothing for seed zero
+     * @throws NumberFormatException
+     *             if the seed given is not a number
+     */
+    public static void main(String[] args) {
+        long seed = (args.length > 0 ? Long.parseLong(args[0]) : 0);
+        compareSearches(seed);
+        compareOptions(seed, false);
+        compareOptions(seed, true);
+        compareTraffic(false);
+        compareTraffic(true);
+    }
+
+    /**
+     * Times the exhaustive, map-based first-solution and compiled searches on
+     * small instances, once the time of each has settled, and prints the
+     * results.
+     *
+     * @throws IllegalStateException
+     *             if the searches disagree on whether an instance has a safe
+     *             allocation
+     */
+    private static void compareSearches(long seed) {
+        Random random = new Random(seed);
+        List<List<Venue>> venueLists = new ArrayList<>();
+        List<List<Event>> eventLists = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            venueLists.add(venues(random, SMALL_VENUES));
+            eventLists.add(events(random, SMALL_EVENTS));
+        }
+        // the number of instances with a safe allocation, by each search
+        int[] feasible = new int[3];
+        long exhaustive = settledTime(() -> {
+            feasible[0] = 0;
+            for (int i = 0; i < INSTANCES; i++) {
+                feasible[0] += (allAllocations(eventLists.get(i),
+                        new ArrayList<>(venueLists.get(i))).isEmpty() ? 0
+                                : 1);
+            }
+        });
+        long first = settledTime(() -> {
+            feasible[1] = 0;
+            for (int i = 0; i < INSTANCES; i++) {
+                feasible[1] += (firstAllocation(eventLists.get(i),
+                        new ArrayList<>(venueLists.get(i)),
+                        new HashMap<>()) == null ? 0 : 1);
+            }
+        });
+        long compiled = settledTime(() -> {
+            feasible[2] = 0;
+            for (int i = 0; i < INSTANCES; i++) {
+                feasible[2] += (Allocator.allocate(eventLists.get(i),
+                        venueLists.get(i)) == null ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < INSTANCES; i++) {
+            boolean none = allAllocations(eventLists.get(i), new ArrayList<>(
+                    venueLists.get(i))).isEmpty();
+            if (none != (firstAllocation(eventLists.get(i), new ArrayList<>(
+                    venueLists.get(i)), new HashMap<>()) == null)
+                    || none != (Allocator.allocate(eventLists.get(i),
+                            venueLists.get(i)) == null)) {
+                throw new IllegalStateException("The searches disagree on "
+                        + "instance " + i + ".");
+            }
+        }
+
+        System.out.printf("%d instances of %d events and %d venues "
+                + "(%d with a safe allocation)%n", INSTANCES, SMALL_EVENTS,
+                SMALL_VENUES, feasible[2]);
+        System.out.printf("  %-28s %12s %14s%n", "search", "total ms",
+                "us per search");
+        printTime("exhaustive (baseline)", exhaustive);
+        printTime("first solution over maps", first);
+        printTime("Allocator.allocate", compiled);
+        System.out.println();
+    }
+
+    /**
+     * Runs the given round of searches until the time of a round is within
+     * SETTLED of the time of the round before, after at least MIN_ROUNDS and
+     * at most MAX_ROUNDS rounds, and returns the time of the last round in
+     * nanoseconds.
+     *
+     * @require round != null
+     */
+    private static long settledTime(Runnable round) {
+        long previous = 0; // the time of the round before
+        long time = 0; // the time of the last round
+        for (int rounds = 1; rounds <= MAX_ROUNDS; rounds++) {
+            long start = System.nanoTime();
+            round.run();
+            time = System.nanoTime() - start;
+            if (rounds >= MIN_ROUNDS && Math.abs(time - previous)
+                    <= SETTLED * previous) {
+                break;
+            }
+            previous = time;
+        }
+        return time;
+    }
+
+    /**
+     * Times Allocator's search with each option changed in turn from the
+     * defaults on larger instances, and prints the results if report is true.
+     */
+    private static void compareOptions(long seed, boolean report) {
+        // the name of each configuration, and its options
+        Map<String, SearchOptions> configurations = new LinkedHashMap<>();
+        configurations.put("defaults", new SearchOptions());
+        configurations.put("no pruning", new SearchOptions());
+        configurations.get("no pruning").setPruning(false);
+        configurations.put("nogood learning", new SearchOptions());
+        configurations.get("nogood learning").setNogoodLearning(true);
+        configurations.put("dominance pruning", new SearchOptions());
+        configurations.get("dominance pruning").setDominancePruning(true);
+        configurations.put("decomposition", new SearchOptions());
+        configurations.get("decomposition").setDecomposition(true);
+        for (EventOrder order : EventOrder.values()) {
+            if (order != EventOrder.INPUT) {
+                configurations.put("events " + order, new SearchOptions());
+                configurations.get("events " + order).setEventOrder(order);
+            }
+        }
+        for (VenueOrder order : VenueOrder.values()) {
+            if (order != VenueOrder.INPUT) {
+                configurations.put("venues " + order, new SearchOptions());
+                configurations.get("venues " + order).setVenueOrder(order);
+            }
+        }
+
+        Random random = new Random(seed + 1);
+        List<List<Venue>> venueLists = new ArrayList<>();
+        List<List<Event>> eventLists = new ArrayList<>();
+        for (int i = 0; i < (report ? INSTANCES : WARM_UP_INSTANCES); i++) {
+            venueLists.add(venues(random, LARGE_VENUES));
+            eventLists.add(events(random, LARGE_EVENTS));
+        }
+        if (report) {
+            System.out.printf("%d instances of %d events and %d venues, "
+                    + "%d ms allowed for each%n", venueLists.size(),
+                    LARGE_EVENTS, LARGE_VENUES, TIME_LIMIT);
+            System.out.printf("  %-28s %12s %14s %9s%n", "options",
+                    "total ms", "nodes", "timeouts");
+        }
+        for (Map.Entry<String, SearchOptions> entry : configurations
+                .entrySet()) {
+            long time = 0; // the total time taken
+            long nodes = 0; // the total nodes visited
+            int timeouts = 0; // the number of searches that did not finish
+            for (int i = 0; i < venueLists.size(); i++) {
+                Solver solver = new Solver(eventLists.get(i), venueLists.get(
+                        i));
+                solver.setOptions(entry.getValue());
+                solver.setTimeout(TIME_LIMIT);
+                long start = System.nanoTime();
+                SolverResult result = solver.solve();
+                time += System.nanoTime() - start;
+                nodes += result.getStatistics().getNodes();
+                timeouts += (result.getOutcome() == Outcome.TIMED_OUT ? 1
+                        : 0);
+            }
+            if (report) {
+                System.out.printf("  %-28s %12.1f %14d %9d%n", entry.getKey(),
+                        time / 1e6, nodes, timeouts);
+            }
+        }
+        if (report) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Times the whole-record operations of Traffic on a dense record against
+     * the same work done one corridor at a time, and prints the results if
+     * report is true.
+     */
+    private static void compareTraffic(boolean report) {
+        List<Corridor> corridors = new ArrayList<>();
+        Traffic total = new Traffic(); // the dense record
+        Traffic extra = new Traffic(); // the dense record added to it
+        for (int c = 0; c < DENSE_CORRIDORS; c++) {
+            Corridor corridor = new Corridor(new Location("benchmark" + c),
+                    new Location("benchmark"), 100);
+            corridors.add(corridor);
+            total.updateTraffic(corridor, 10);
+            extra.updateTraffic(corridor, 1);
+        }
+
+        int safe = 0; // keeps the results of the checks alive
+        long start = System.nanoTime();
+        for (int i = 0; i < TRAFFIC_REPEATS; i++) {
+            safe += (total.isSafe() ? 1 : 0);
+            safe += (total.canAddSafely(extra) ? 1 : 0);
+        }
+        long checks = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < TRAFFIC_REPEATS / 10; i++) {
+            total.addTraffic(extra);
+            total.removeTraffic(extra);
+        }
+        long updates = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < TRAFFIC_REPEATS / 10; i++) {
+            for (Corridor corridor : corridors) {
+                safe += (total.getTraffic(corridor) + extra.getTraffic(
+                        corridor) <= corridor.getCapacity() ? 1 : 0);
+            }
+        }
+        long corridorChecks = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < TRAFFIC_REPEATS / 100; i++) {
+            for (Corridor corridor : corridors) {
+                total.updateTraffic(corridor, extra.getTraffic(corridor));
+            }
+            for (Corridor corridor : corridors) {
+                total.updateTraffic(corridor, -extra.getTraffic(corridor));
+            }
+        }
+        long corridorUpdates = System.nanoTime() - start;
+
+        if (report) {
+            System.out.printf("Traffic with %d corridors (%d checks)%n",
+                    DENSE_CORRIDORS, safe);
+            System.out.printf("  %-40s %12s%n", "operation", "us per call");
+            System.out.printf("  %-40s %12.2f%n", "isSafe + canAddSafely",
+                    checks / 1e3 / TRAFFIC_REPEATS);
+            System.out.printf("  %-40s %12.2f%n", "getTraffic per corridor",
+                    corridorChecks / 1e3 / (TRAFFIC_REPEATS / 10));
+            System.out.printf("  %-40s %12.2f%n",
+                    "addTraffic + removeTraffic", updates / 1e3
+                            / (TRAFFIC_REPEATS / 10));
+            System.out.printf("  %-40s %12.2f%n",
+                    "updateTraffic per corridor, twice", corridorUpdates
+                            / 1e3 / (TRAFFIC_REPEATS / 100));
+        }
+    }
+
+    /**
+     * Prints a row of the first table, given the time of a round.
+     */
+    private static void printTime(String name, long nanos) {
+        System.out.printf("  %-28s %12.2f %14.1f%n", name, nanos / 1e6, nanos
+                / 1e3 / INSTANCES);
+    }
+
+    /**
+     * Returns the given number of random venues, which share CORRIDORS
+     * corridors between them, each with traffic on one to four of them.
+     *
+     * @require random != null && count >= 0
+     */
+    private static List<Venue> venues(Random random, int count) {
+        List<Corridor> corridors = new ArrayList<>();
+        for (int c = 0; c < CORRIDORS; c++) {
+            corridors.add(new Corridor(new Location("L" + c), new Location("M"
+                    + c), 20 + random.nextInt(80)));
+        }
+        List<Venue> result = new ArrayList<>();
+        for (int v = 0; v < count; v++) {
+            int capacity = 10 + random.nextInt(90);
+            Traffic traffic = new Traffic(); // the capacity traffic
+            for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                Corridor corridor = corridors.get(random.nextInt(CORRIDORS));
+                if (traffic.getTraffic(corridor) == 0) {
+                    traffic.updateTraffic(corridor, 1 + random.nextInt(Math
+                            .min(capacity, corridor.getCapacity())));
+                }
+            }
+            result.add(new Venue("V" + v, capacity, traffic));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the given number of random events.
+     *
+     * @require random != null && count >= 0
+     */
+    private static List<Event> events(Random random, int count) {
+        List<Event> result = new ArrayList<>();
+        for (int e = 0; e < count; e++) {
+            result.add(new Event("E" + e, 5 + random.nextInt(60)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the set of all possible safe allocations of events to venues,
+     * as the original Allocator did.
+     *
+     * @require events != null && venues != null && venues may be modified
+     * @ensure venues is as it was on entry.
+     */
+    private static Set<Map<Event, Venue>> allAllocations(List<Event> events,
+            List<Venue> venues) {
+        // set of possible allocations
+        Set<Map<Event, Venue>> result = new HashSet<>();
+        if (events.isEmpty()) {
+            result.add(new HashMap<Event, Venue>());
+            return result;
+        }
+        // the event to be allocated next
+        Event event = events.get(0);
+        // the rest of the events to be allocated
+        List<Event> remainingEvents = events.subList(1, events.size());
+        for (int i = 0; i < venues.size(); i++) {
+            Venue venue = venues.get(i);
+            if (venue.canHost(event)) {
+                venues.remove(i);
+                for (Map<Event, Venue> allocation : allAllocations(
+                        remainingEvents, venues)) {
+                    allocation.put(event, venue);
+                    if (isSafe(allocation)) {
+                        result.add(allocation);
+                    }
+                }
+                venues.add(i, venue);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Extends the given safe partial allocation to a safe allocation of all of
+     * the given events, returning the first found by a depth-first search, or
+     * null if there is none, as the first-solution Allocator over maps did.
+     *
+     * @require events != null && venues != null && allocation != null &&
+     *          venues may be modified
+     * @ensure venues is as it was on entry.
+     */
+    private static Map<Event, Venue> firstAllocation(List<Event> events,
+            List<Venue> venues, Map<Event, Venue> allocation) {
+        if (events.isEmpty()) {
+            return allocation;
+        }
+        // the event to be allocated next
+        Event event = events.get(0);
+        // the rest of the events to be allocated
+        List<Event> remainingEvents = events.subList(1, events.size());
+        for (int i = 0; i < venues.size(); i++) {
+            Venue venue = venues.get(i);
+            if (venue.canHost(event)) {
+                allocation.put(event, venue);
+                if (isSafe(allocation)) {
+                    venues.remove(i);
+                    Map<Event, Venue> result = firstAllocation(
+                            remainingEvents, venues, allocation);
+                    venues.add(i, venue);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+                allocation.remove(event);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the traffic caused by the given allocation is safe.
+     *
+     * @require allocation != null && each event in allocation maps to a venue
+     *          that can host it
+     */
+    private static boolean isSafe(Map<Event, Venue> allocation) {
+        Traffic traffic = new Traffic(); // the traffic of the allocation
+        for (Map.Entry<Event, Venue> entry : allocation.entrySet()) {
+            traffic.addTraffic(entry.getValue().getTraffic(entry.getKey()));
+        }
+        return traffic.isSafe();
+    }
+
+}
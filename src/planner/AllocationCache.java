@@ -0,0 +1,223 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A bounded, thread-safe cache of the results of Allocator.allocate, for
+ * callers that solve the same problem many times.
+ * </p>
+ * 
+ * <p>
+ * Results are filed under the ProblemFingerprint of the problem, which is
+ * built from the sizes of the events and the capacities and capacity traffic
+ * of the venues and corridors, rather than from the events and venues
+ * themselves. A result is stored as the index of the venue given to each
+ * event, with the events in ascending order of size, and is turned back into
+ * an allocation of the events and venues of each query that hits it. Since
+ * events of the same size are interchangeable, and venues with the same
+ * fingerprint part are the same in every way that matters, this is a safe
+ * allocation of the query's events to its venues, though it may not be the
+ * one that Allocator.allocate would return for them. That there is no safe
+ * allocation is cached too.
+ * </p>
+ * 
+ * <p>
+ * When the venue catalog changes, queries with the new venues have a
+ * different fingerprint, so they never hit results for the old catalog;
+ * those results are dropped as the cache fills, or at once by
+ * invalidate(venues). At most the given number of results are kept, and when
+ * the cache is full the least recently used one is dropped.
+ * </p>
+ */
+public class AllocationCache {
+
+    // the result stored for a problem with no safe allocation
+    private final static int[] NO_ALLOCATION = new int[0];
+
+    // the greatest number of results kept
+    private final int maxEntries;
+    // the venue index of each event, in ascending order of size, for each
+    // problem, least recently used first
+    private final Map<ProblemFingerprint, int[]> results;
+    // the number of queries answered from the cache
+    private long hits;
+    // the number of queries that had to be solved
+    private long misses;
+
+    /*
+     * invariant: maxEntries > 0 && results.size() <= maxEntries && hits >= 0
+     * && misses >= 0
+     */
+
+    /**
+     * Creates a new, empty cache that keeps at most the given number of
+     * results.
+     * 
+     * @param maxEntries
+     *            the greatest number of results kept
+     * @throws IllegalArgumentException
+     *             if maxEntries <= 0
+     */
+    public AllocationCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException(
+                    "The number of entries must be greater than zero.");
+        }
+        this.maxEntries = maxEntries;
+        results = new LinkedHashMap<ProblemFingerprint, int[]>(16, 0.75f,
+                true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<ProblemFingerprint, int[]> eldest) {
+                return size() > AllocationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a safe allocation of events to venues, if there is at least one
+     * possible safe allocation, or null otherwise, from the cache if it holds
+     * the result for the same problem, and from Allocator.allocate otherwise.
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @return a safe allocation of events to venues, or null if there is none
+     * @throws NullPointerException
+     *             if events or venues is null
+     * @require !events.contains(null) && !venues.contains(null) && events does
+     *          not contain duplicate events && venues does not contain
+     *          duplicate venues.
+     */
+    public Map<Event, Venue> allocate(List<Event> events, List<Venue> venues) {
+        if (events == null || venues == null) {
+            throw new NullPointerException(
+                    "The events and venues cannot be null.");
+        }
+        ProblemFingerprint key = new ProblemFingerprint(events, venues);
+        // the events in ascending order of size
+        List<Event> sorted = new ArrayList<>(events);
+        sorted.sort((a, b) -> Integer.compare(a.getSize(), b.getSize()));
+
+        int[] result; // the venue index of each event in sorted
+        synchronized (this) {
+            result = results.get(key);
+            if (result != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (result == null) {
+            // the search is run outside the lock, so that other queries are
+            // not held up by it
+            result = solve(sorted, venues);
+            synchronized (this) {
+                results.put(key, result);
+            }
+        }
+
+        if (result == NO_ALLOCATION) {
+            return null;
+        }
+        Map<Event, Venue> allocation = new HashMap<>();
+        for (int e = 0; e < result.length; e++) {
+            allocation.put(sorted.get(e), venues.get(result[e]));
+        }
+        return allocation;
+    }
+
+    /**
+     * Returns the venue index of each of the given events in a safe
+     * allocation of them to the given venues, or NO_ALLOCATION if there is
+     * none.
+     * 
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null)
+     */
+    private static int[] solve(List<Event> events, List<Venue> venues) {
+        Map<Event, Venue> allocation = Allocator.allocate(events, venues);
+        if (allocation == null) {
+            return NO_ALLOCATION;
+        }
+        // the index of each venue in the list
+        Map<Venue, Integer> indices = new HashMap<>();
+        for (int v = 0; v < venues.size(); v++) {
+            indices.put(venues.get(v), v);
+        }
+        int[] result = new int[events.size()];
+        for (int e = 0; e < result.length; e++) {
+            result[e] = indices.get(allocation.get(events.get(e)));
+        }
+        return result;
+    }
+
+    /**
+     * Removes every result for the given venues, whatever the events, for
+     * example because the venue catalog they came from has been replaced.
+     * 
+     * @param venues
+     *            the venues whose results are to be removed
+     * @throws NullPointerException
+     *             if venues is null
+     * @require !venues.contains(null)
+     */
+    public void invalidate(List<Venue> venues) {
+        if (venues == null) {
+            throw new NullPointerException("The venues cannot be null.");
+        }
+        ProblemFingerprint catalog = new ProblemFingerprint(Collections
+                .emptyList(), venues);
+        synchronized (this) {
+            results.keySet().removeIf(key -> key.sameVenues(catalog));
+        }
+    }
+
+    /**
+     * Removes every result from the cache. The hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        results.clear();
+    }
+
+    /**
+     * Returns the number of results in the cache.
+     * 
+     * @return the number of results kept
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Returns the number of queries that were answered from the cache.
+     * 
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of queries that had to be solved.
+     * 
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of queries that were answered from the cache, or
+     * zero if there have been no queries.
+     * 
+     * @return the hit rate, between zero and one
+     */
+    public synchronized double getHitRate() {
+        long queries = hits + misses; // the number of queries so far
+        return (queries == 0 ? 0 : (double) hits / queries);
+    }
+
+}
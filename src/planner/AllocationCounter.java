@@ -0,0 +1,197 @@
+package planner;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * <p>
+ * Counts the safe allocations of the events of a compiled allocation problem
+ * to its venues, without constructing any of them.
+ * </p>
+ * 
+ * <p>
+ * The count is computed by a depth-first search in which the number of safe
+ * completions of each node is remembered. Two nodes at the same depth have
+ * the same number of completions if the same venues are still available to
+ * the remaining events, and the corridors those venues use carry the same
+ * load. The key of a node is therefore its depth, the set of available venues
+ * that can host at least one of the remaining events, and the load on the
+ * corridors of those venues (with the load on every other corridor, which can
+ * no longer matter, taken as zero). Repeated sub-problems are then counted
+ * once.
+ * </p>
+ * 
+ * <p>
+ * At most MAX_ENTRIES counts are remembered, so that the memory used stays
+ * bounded; once the limit is reached, further sub-problems are counted
+ * without being remembered.
+ * </p>
+ */
+class AllocationCounter {
+
+    // the maximum number of sub-problem counts that are remembered
+    private final static int MAX_ENTRIES = 1 << 20;
+
+    // the problem being counted
+    private final AllocationProblem problem;
+    // the search holding the load and used venues of the current node
+    private final AllocationSearch search;
+    // for each depth, the size of the smallest event still to be placed
+    private final int[] smallestRemaining;
+    // the number of safe completions of each sub-problem seen so far
+    private final Map<SubProblem, BigInteger> counts;
+
+    /**
+     * Creates a counter for the safe allocations of the given problem.
+     * 
+     * @require problem != null
+     */
+    AllocationCounter(AllocationProblem problem) {
+        this.problem = problem;
+        search = new AllocationSearch(problem);
+        counts = new HashMap<>();
+
+        smallestRemaining = new int[problem.eventCount() + 1];
+        smallestRemaining[problem.eventCount()] = Integer.MAX_VALUE;
+        for (int e = problem.eventCount() - 1; e >= 0; e--) {
+            smallestRemaining[e] = Math.min(smallestRemaining[e + 1], problem
+                    .getEventSize(e));
+        }
+    }
+
+    /**
+     * Returns the number of safe allocations of the problem.
+     * 
+     * @ensure Returns the number of distinct safe allocations of all of the
+     *         events of the problem to its venues.
+     */
+    BigInteger count() {
+        return count(0);
+    }
+
+    /**
+     * Returns the number of safe completions of the current partial
+     * allocation.
+     * 
+     * @require the events with ids less than event are placed, safely
+     * @ensure Returns the number of safe allocations that extend the current
+     *         partial allocation. The placed events are as they were on entry.
+     */
+    private BigInteger count(int event) {
+        /* BASE CASE: no more events to allocate */
+        if (event == problem.eventCount()) {
+            return BigInteger.ONE;
+        }
+        if (event == problem.eventCount() - 1) {
+            return BigInteger.valueOf(countVenues(event));
+        }
+
+        SubProblem key = subProblem(event);
+        BigInteger result = counts.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        /* RECURSIVE CASE: there is at least one more event to allocate. */
+        result = BigInteger.ZERO;
+        for (int venue = search.nextFreeHost(event, 0); venue < problem
+                .venueCount(); venue = search.nextFreeHost(event, venue + 1)) {
+            if (search.canPlace(event, venue) && search.place(event,
+                    venue)) {
+                result = result.add(count(event + 1));
+                search.remove(event, venue);
+            }
+        }
+        if (counts.size() < MAX_ENTRIES) {
+            counts.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of venues at which the given event, the last one to
+     * be placed, can safely be placed.
+     * 
+     * @require event == problem.eventCount() - 1 && the events with ids less
+     *          than event are placed, safely
+     */
+    private long countVenues(int event) {
+        long result = 0; // the number of venues found so far
+        for (int venue = search.nextFreeHost(event, 0); venue < problem
+                .venueCount(); venue = search.nextFreeHost(event, venue + 1)) {
+            if (search.canPlace(event, venue) && search.place(event,
+                    venue)) {
+                search.remove(event, venue);
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of the sub-problem of placing the events from the given
+     * one onwards, given the current partial allocation.
+     * 
+     * @require the events with ids less than event are placed
+     */
+    private SubProblem subProblem(int event) {
+        long[] available = new long[(problem.venueCount() + 63) / 64];
+        int[] load = new int[problem.corridorCount()];
+        for (int venue = 0; venue < problem.venueCount(); venue++) {
+            if (search.isUsed(venue) || problem.getVenueCapacity(
+                    venue) < smallestRemaining[event]) {
+                continue; // no remaining event can be placed at the venue
+            }
+            available[venue >>> 6] |= 1L << venue;
+            for (int corridor : problem.getVenueCorridors(venue)) {
+                load[corridor] = search.getLoad(corridor);
+            }
+        }
+        return new SubProblem(event, available, load);
+    }
+
+    /**
+     * An immutable key identifying a sub-problem of the count.
+     */
+    private static class SubProblem {
+
+        // the id of the next event to be placed
+        private final int event;
+        // the set of venues available to the remaining events, as a bitset
+        private final long[] available;
+        // the load on the corridors used by the available venues
+        private final int[] load;
+        // the hash code of the key, computed once
+        private final int hash;
+
+        /**
+         * Creates a key from the given arrays, which are not copied.
+         */
+        SubProblem(int event, long[] available, int[] load) {
+            this.event = event;
+            this.available = available;
+            this.load = load;
+            final int prime = 31; // an odd base prime
+            int result = event; // the hash code under construction
+            result = prime * result + Arrays.hashCode(available);
+            result = prime * result + Arrays.hashCode(load);
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof SubProblem)) {
+                return false;
+            }
+            SubProblem other = (SubProblem) object; // the key to compare
+            return event == other.event && Arrays.equals(available,
+                    other.available) && Arrays.equals(load, other.load);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
@@ -0,0 +1,605 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable, compiled form of the problem of allocating a list of events to
+ * a list of venues, on which the allocation search runs.
+ * </p>
+ * 
+ * <p>
+ * Events, venues and traffic corridors are numbered densely from zero, so that
+ * the search can work with arrays of ints instead of comparing corridors and
+ * locations by name and boxing traffic amounts in maps. Venues are numbered in
+ * the order of the list they were compiled from, and corridors in their
+ * natural ordering. Events are numbered in the given EventOrder, with events of
+ * the same size numbered consecutively (in the order of the first event of
+ * each size, if the order does not distinguish them).
+ * </p>
+ * 
+ * <p>
+ * The traffic generated by a venue is stored as a sparse vector: for each
+ * venue, the ids of the corridors that have traffic when the venue hosts an
+ * event of maximum size, and the amount of that traffic on each of them.
+ * </p>
+ * 
+ * <p>
+ * The venue part of a problem is held in a VenueModel, which may be compiled
+ * once and shared by many problems with the same venues and different events.
+ * </p>
+ * 
+ * <p>
+ * A problem may be compiled against background traffic (for example, the
+ * traffic of events that are already allocated and are not to be moved). The
+ * capacity of each corridor in the problem is then the capacity left once the
+ * background traffic is taken into account.
+ * </p>
+ * 
+ * <p>
+ * The problem also records which events and venues are interchangeable. Two
+ * events of the same size generate the same traffic at any venue, and two
+ * venues with the same capacity and capacity traffic generate the same
+ * traffic for any event, so swapping either kind of pair in a safe allocation
+ * gives another safe allocation.
+ * </p>
+ * 
+ * <p>
+ * Finally, for each event id, the problem records a lower bound on the traffic
+ * that the events from that id onwards must generate on each corridor:
+ * wherever an event is placed, it generates at least the least traffic on the
+ * corridor of any of the venues that can host it (which is zero unless every
+ * such venue uses the corridor). In the same way it records a lower bound on
+ * the total traffic, over all corridors, that those events must generate.
+ * </p>
+ */
+class AllocationProblem {
+
+    // the compiled venues, shared with other problems
+    private final VenueModel model;
+    // the events to be allocated, indexed by event id
+    private final Event[] events;
+    // the venues that events may be allocated to, indexed by venue id
+    private final Venue[] venues;
+    // the corridors with traffic from any venue, indexed by corridor id
+    private final Corridor[] corridors;
+
+    // the size of each event
+    private final int[] eventSizes;
+    // the capacity of each venue
+    private final int[] venueCapacities;
+    // the capacity of each corridor, less its background traffic
+    private final int[] corridorCapacities;
+    // for each venue, the ids of the corridors with capacity traffic
+    private final int[][] venueCorridors;
+    // for each venue, the capacity traffic on each of venueCorridors[v]
+    private final int[][] venueTraffic;
+    // for each event, the set of venues that can host it, as a bitset
+    // (shared between events of the same size)
+    private final long[][] hostWords;
+    // for each event, whether it has the same size as the event before it
+    private final boolean[] sameAsPrevious;
+    // for each venue, the id of the closest venue before it that is
+    // interchangeable with it, or -1 if there is none
+    private final int[] previousEquivalent;
+    // for each event id e (and eventCount()), the ids of the corridors on
+    // which the events from e onwards must generate traffic, ascending
+    private final int[][] boundCorridors;
+    // for each event id e, the least traffic the events from e onwards must
+    // generate on each of boundCorridors[e]
+    private final int[][] boundTraffic;
+    // for each event id e, the least total traffic the events from e onwards
+    // must generate
+    private final long[] boundTotals;
+
+    /*
+     * invariant:
+     * 
+     * eventSizes.length == events.length && venueCapacities.length ==
+     * venueTraffic.length == venueCorridors.length == venues.length &&
+     * corridorCapacities.length == corridors.length &&
+     * 
+     * for each venue id v, venueCorridors[v].length == venueTraffic[v].length,
+     * venueCorridors[v] is in ascending order, and venueTraffic[v][k] > 0 is
+     * the capacity traffic of venues[v] on corridors[venueCorridors[v][k]] &&
+     * 
+     * for each event id e, bit v of hostWords[e] is set iff venue v can host
+     * event e &&
+     * 
+     * sameAsPrevious[e] iff e > 0 && eventSizes[e] == eventSizes[e - 1] &&
+     * 
+     * previousEquivalent[v] is the largest id w < v with the same capacity,
+     * venueCorridors and venueTraffic as v, or -1 if there is none &&
+     * 
+     * for each 0 <= e <= events.length, boundCorridors[e] and boundTraffic[e]
+     * are the sparse sum, over the events from e onwards, of the least traffic
+     * the event generates at any venue that can host it &&
+     * 
+     * for each 0 <= e <= events.length, boundTotals[e] is the sum, over the
+     * events from e onwards, of the least total traffic the event generates
+     * at any venue that can host it.
+     */
+
+    /**
+     * Creates a compiled problem of allocating the given events, which are not
+     * copied, to the venues of the given model, against the given background
+     * traffic.
+     */
+    private AllocationProblem(Event[] events, VenueModel model,
+            Traffic background) {
+        this.model = model;
+        this.events = events;
+        venues = model.getVenues();
+        corridors = model.getCorridors();
+        venueCorridors = model.getVenueCorridors();
+        venueTraffic = model.getVenueTraffic();
+        venueCapacities = model.getVenueCapacities();
+        previousEquivalent = model.getPreviousEquivalent();
+
+        eventSizes = new int[events.length];
+        for (int e = 0; e < events.length; e++) {
+            eventSizes[e] = events[e].getSize();
+        }
+        corridorCapacities = new int[corridors.length];
+        for (int c = 0; c < corridors.length; c++) {
+            corridorCapacities[c] = corridors[c].getCapacity() - background
+                    .getTraffic(corridors[c]);
+        }
+
+        hostWords = new long[events.length][];
+        // the set of venues that can host an event of each size
+        Map<Integer, long[]> hostsBySize = new HashMap<>();
+        for (int e = 0; e < events.length; e++) {
+            hostWords[e] = hostsBySize.computeIfAbsent(eventSizes[e],
+                    this::hosts);
+        }
+
+        sameAsPrevious = new boolean[events.length];
+        for (int e = 1; e < events.length; e++) {
+            sameAsPrevious[e] = eventSizes[e] == eventSizes[e - 1];
+        }
+        boundCorridors = new int[events.length + 1][];
+        boundTraffic = new int[events.length + 1][];
+        // the least traffic generated by an event of each size
+        Map<Integer, SortedMap<Integer, Integer>> leastBySize = new HashMap<>();
+        // the bound for the events after the current one
+        SortedMap<Integer, Integer> bound = new TreeMap<>();
+        boundTotals = new long[events.length + 1];
+        for (int e = events.length; e >= 0; e--) {
+            if (e < events.length) {
+                int size = eventSizes[e];
+                boundTotals[e] = boundTotals[e + 1] + leastTotalTraffic(size);
+                SortedMap<Integer, Integer> least = leastBySize
+                        .computeIfAbsent(size, this::leastTraffic);
+                for (Map.Entry<Integer, Integer> entry : least.entrySet()) {
+                    bound.merge(entry.getKey(), entry.getValue(),
+                            Integer::sum);
+                }
+            }
+            boundCorridors[e] = new int[bound.size()];
+            boundTraffic[e] = new int[bound.size()];
+            int k = 0; // the number of entries filled in so far
+            for (Map.Entry<Integer, Integer> entry : bound.entrySet()) {
+                boundCorridors[e][k] = entry.getKey();
+                boundTraffic[e][k] = entry.getValue();
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Returns the set of venues that can host an event of the given size, as
+     * a bitset.
+     * 
+     * @require size > 0 && the venue fields have been initialised
+     */
+    private long[] hosts(int size) {
+        long[] hosts = new long[(venues.length + 63) / 64];
+        for (int v = 0; v < venues.length; v++) {
+            if (size <= venueCapacities[v]) {
+                hosts[v >>> 6] |= 1L << v;
+            }
+        }
+        return hosts;
+    }
+
+    /**
+     * Returns the least total traffic, over all corridors, generated by an
+     * event of the given size at any of the venues that can host it, or zero
+     * if no venue can host it.
+     * 
+     * @require size > 0 && the venue fields have been initialised
+     */
+    private long leastTotalTraffic(int size) {
+        long least = Long.MAX_VALUE; // the least total traffic so far
+        for (int v = 0; v < venues.length; v++) {
+            if (size > venueCapacities[v]) {
+                continue;
+            }
+            long total = 0; // the total traffic at this venue
+            for (int k = 0; k < venueCorridors[v].length; k++) {
+                total += (size * venueTraffic[v][k]) / venueCapacities[v];
+            }
+            least = Math.min(least, total);
+        }
+        return (least == Long.MAX_VALUE ? 0 : least);
+    }
+
+    /**
+     * Returns the least traffic generated by an event of the given size, on
+     * each corridor, at any of the venues that can host it.
+     * 
+     * @require size > 0 && the venue fields have been initialised
+     * @ensure Returns a map from the id of each corridor that every venue that
+     *         can host the event uses to the least traffic the event would
+     *         generate on it at any of those venues. (If no venue can host the
+     *         event, the map is empty.)
+     */
+    private SortedMap<Integer, Integer> leastTraffic(int size) {
+        SortedMap<Integer, Integer> least = null; // the least traffic so far
+        for (int v = 0; v < venues.length; v++) {
+            if (size > venueCapacities[v]) {
+                continue;
+            }
+            // the traffic the event would generate at this venue
+            SortedMap<Integer, Integer> traffic = new TreeMap<>();
+            for (int k = 0; k < venueCorridors[v].length; k++) {
+                traffic.put(venueCorridors[v][k], (size * venueTraffic[v][k])
+                        / venueCapacities[v]);
+            }
+            if (least == null) {
+                least = traffic;
+            } else {
+                least.keySet().retainAll(traffic.keySet());
+                for (Map.Entry<Integer, Integer> entry : least.entrySet()) {
+                    entry.setValue(Math.min(entry.getValue(), traffic.get(
+                            entry.getKey())));
+                }
+            }
+        }
+        return (least == null ? new TreeMap<>() : least);
+    }
+
+    /**
+     * Compiles the problem of allocating the given events, in the order in
+     * which they are given, to the given venues.
+     * 
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     * @ensure Returns the compiled problem. The given lists are not modified.
+     */
+    static AllocationProblem compile(List<Event> events, List<Venue> venues) {
+        return compile(events, venues, EventOrder.INPUT);
+    }
+
+    /**
+     * Compiles the problem of allocating the given events, in the given order,
+     * to the given venues.
+     * 
+     * @require events != null && venues != null && order != null &&
+     *          !events.contains(null) && !venues.contains(null) && events does
+     *          not contain duplicate events && venues does not contain
+     *          duplicate venues.
+     * @ensure Returns the compiled problem. The given lists are not modified.
+     */
+    static AllocationProblem compile(List<Event> events, List<Venue> venues,
+            EventOrder order) {
+        return compile(events, venues, order, new Traffic());
+    }
+
+    /**
+     * Compiles the problem of allocating the given events, in the given order,
+     * to the given venues, on top of the given background traffic.
+     * 
+     * @require events != null && venues != null && order != null &&
+     *          background != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     * @ensure Returns the compiled problem. The given lists and background
+     *         traffic are not modified.
+     */
+    static AllocationProblem compile(List<Event> events, List<Venue> venues,
+            EventOrder order, Traffic background) {
+        return compile(events, VenueModel.compile(venues), order, background);
+    }
+
+    /**
+     * Compiles the problem of allocating the given events, in the given order,
+     * to the venues of the given model, on top of the given background
+     * traffic. The model is shared with the problem, not copied.
+     * 
+     * @require events != null && model != null && order != null &&
+     *          background != null && !events.contains(null) && events does
+     *          not contain duplicate events
+     * @ensure Returns the compiled problem. The given list and background
+     *         traffic are not modified.
+     */
+    static AllocationProblem compile(List<Event> events, VenueModel model,
+            EventOrder order, Traffic background) {
+        // the events, with events of the same size grouped together
+        Map<Integer, List<Event>> eventsBySize = new LinkedHashMap<>();
+        for (Event event : events) {
+            eventsBySize.computeIfAbsent(event.getSize(),
+                    size -> new ArrayList<>()).add(event);
+        }
+        List<Integer> sizes = new ArrayList<>(eventsBySize.keySet());
+        // the key to sort the sizes by, if the order is not the input order
+        Map<Integer, Double> keys = new HashMap<>();
+        for (int size : sizes) {
+            keys.put(size, orderKey(order, size, model));
+        }
+        if (order != EventOrder.INPUT) {
+            sizes.sort((a, b) -> Double.compare(keys.get(a), keys.get(b)));
+        }
+        List<Event> orderedEvents = new ArrayList<>(events.size());
+        for (int size : sizes) {
+            orderedEvents.addAll(eventsBySize.get(size));
+        }
+        return new AllocationProblem(orderedEvents.toArray(new Event[0]),
+                model, background);
+    }
+
+    /**
+     * Returns the key by which events of the given size are sorted, in
+     * ascending order, to allocate them in the given order.
+     * 
+     * @require order != null && size > 0 && model != null
+     */
+    private static double orderKey(EventOrder order, int size,
+            VenueModel model) {
+        int[] capacities = model.getVenueCapacities();
+        switch (order) {
+        case LARGEST_FIRST:
+            return -size;
+        case FEWEST_VENUES_FIRST:
+            int hosts = 0; // the number of venues that can host the event
+            for (int capacity : capacities) {
+                if (size <= capacity) {
+                    hosts++;
+                }
+            }
+            return hosts;
+        case MOST_TRAFFIC_FIRST:
+            int[][] venueCorridors = model.getVenueCorridors();
+            int[][] venueTraffic = model.getVenueTraffic();
+            Corridor[] corridors = model.getCorridors();
+            // the least corridor load of the event at any venue
+            double least = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < capacities.length; v++) {
+                if (size > capacities[v]) {
+                    continue;
+                }
+                double load = 0; // the corridor load at this venue
+                for (int k = 0; k < venueCorridors[v].length; k++) {
+                    load += (double) ((size * venueTraffic[v][k])
+                            / capacities[v]) / corridors[venueCorridors[v][k]]
+                            .getCapacity();
+                }
+                least = Math.min(least, load);
+            }
+            return -least;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the number of events in the problem.
+     */
+    int eventCount() {
+        return events.length;
+    }
+
+    /**
+     * Returns the number of venues in the problem.
+     */
+    int venueCount() {
+        return venues.length;
+    }
+
+    /**
+     * Returns the number of corridors with traffic from any venue.
+     */
+    int corridorCount() {
+        return corridors.length;
+    }
+
+    /**
+     * Returns the event with the given id.
+     * 
+     * @require 0 <= event < eventCount()
+     */
+    Event getEvent(int event) {
+        return events[event];
+    }
+
+    /**
+     * Returns the venue with the given id.
+     * 
+     * @require 0 <= venue < venueCount()
+     */
+    Venue getVenue(int venue) {
+        return venues[venue];
+    }
+
+    /**
+     * Returns the corridor with the given id.
+     * 
+     * @require 0 <= corridor < corridorCount()
+     */
+    Corridor getCorridor(int corridor) {
+        return corridors[corridor];
+    }
+
+    /**
+     * Returns the size of the event with the given id.
+     * 
+     * @require 0 <= event < eventCount()
+     */
+    int getEventSize(int event) {
+        return eventSizes[event];
+    }
+
+    /**
+     * Returns the capacity of the venue with the given id.
+     * 
+     * @require 0 <= venue < venueCount()
+     */
+    int getVenueCapacity(int venue) {
+        return venueCapacities[venue];
+    }
+
+    /**
+     * Returns the capacity of the corridor with the given id, less the
+     * background traffic on it.
+     * 
+     * @require 0 <= corridor < corridorCount()
+     */
+    int getCorridorCapacity(int corridor) {
+        return corridorCapacities[corridor];
+    }
+
+    /**
+     * Returns true if the venue with the given id can host the event with the
+     * given id, and false otherwise.
+     * 
+     * @require 0 <= event < eventCount() && 0 <= venue < venueCount()
+     */
+    boolean canHost(int venue, int event) {
+        return eventSizes[event] <= venueCapacities[venue];
+    }
+
+    /**
+     * Returns the set of venues that can host the event with the given id, as
+     * a bitset: venue v can host the event iff bit (v % 64) of word (v / 64)
+     * is set.
+     * 
+     * @require 0 <= event < eventCount()
+     * @ensure Returns an array of (venueCount() + 63) / 64 words. The returned
+     *         array is shared and must not be modified.
+     */
+    long[] getHostWords(int event) {
+        return hostWords[event];
+    }
+
+    /**
+     * Returns true if the event with the given id is interchangeable with (has
+     * the same size as) the event with the id before it, and false otherwise.
+     * 
+     * @require 0 <= event < eventCount()
+     */
+    boolean isSameAsPrevious(int event) {
+        return sameAsPrevious[event];
+    }
+
+    /**
+     * Returns the id of the closest venue before the venue with the given id
+     * that is interchangeable with it (has the same capacity and capacity
+     * traffic), or -1 if there is no such venue.
+     * 
+     * @require 0 <= venue < venueCount()
+     */
+    int getPreviousEquivalent(int venue) {
+        return previousEquivalent[venue];
+    }
+
+    /**
+     * Returns the venue ids in an order in which each venue comes after every
+     * venue that dominates it (see VenueModel). The returned array is shared
+     * and must not be modified.
+     */
+    int[] getDominanceOrder() {
+        return model.getDominanceOrder();
+    }
+
+    /**
+     * Returns, for each venue id, the ids of some of the venues that dominate
+     * it and use at least one corridor (see VenueModel), finding them if they
+     * have not been found yet. The returned arrays are shared and must not be
+     * modified.
+     */
+    int[][] getDominators() {
+        return model.getDominators();
+    }
+
+    /**
+     * Returns the ids of the corridors that have traffic when the venue with
+     * the given id hosts an event of maximum size, in ascending order.
+     * 
+     * @require 0 <= venue < venueCount()
+     * @ensure Returns the ids of the corridors used by the venue. The returned
+     *         array is shared and must not be modified.
+     */
+    int[] getVenueCorridors(int venue) {
+        return venueCorridors[venue];
+    }
+
+    /**
+     * Returns the traffic generated on the kth corridor of the venue with the
+     * given id (i.e. on corridor getVenueCorridors(venue)[k]) by hosting the
+     * event with the given id at that venue. As in Venue.getTraffic, this is
+     * the capacity traffic scaled by the size of the event and truncated.
+     * 
+     * @require 0 <= event < eventCount() && 0 <= venue < venueCount() &&
+     *          canHost(venue, event) && 0 <= k <
+     *          getVenueCorridors(venue).length
+     */
+    int getTraffic(int venue, int event, int k) {
+        return (eventSizes[event] * venueTraffic[venue][k])
+                / venueCapacities[venue];
+    }
+
+    /**
+     * Returns the ids of the corridors on which the events with ids from the
+     * given one onwards must generate traffic wherever they are placed, in
+     * ascending order.
+     * 
+     * @require 0 <= event <= eventCount()
+     * @ensure Returns the ids of the corridors. The returned array is shared
+     *         and must not be modified.
+     */
+    int[] getBoundCorridors(int event) {
+        return boundCorridors[event];
+    }
+
+    /**
+     * Returns the least traffic that the events with ids from the given one
+     * onwards must generate on the kth of the corridors given by
+     * getBoundCorridors(event), wherever they are placed.
+     * 
+     * @require 0 <= event <= eventCount() && 0 <= k <
+     *          getBoundCorridors(event).length
+     */
+    int getBoundTraffic(int event, int k) {
+        return boundTraffic[event][k];
+    }
+
+    /**
+     * Returns the least total traffic, over all corridors, that the events
+     * with ids from the given one onwards must generate wherever they are
+     * placed.
+     * 
+     * @require 0 <= event <= eventCount()
+     */
+    long getBoundTotal(int event) {
+        return boundTotals[event];
+    }
+
+    /**
+     * Returns the allocation that maps each event to the venue that it is
+     * assigned to in the given assignment.
+     * 
+     * @require assignment != null && assignment.length == eventCount() && each
+     *          entry of assignment is a venue id
+     * @ensure Returns a new map from each event to its assigned venue.
+     */
+    Map<Event, Venue> toAllocation(int[] assignment) {
+        Map<Event, Venue> allocation = new HashMap<>();
+        for (int e = 0; e < assignment.length; e++) {
+            allocation.put(events[e], venues[assignment[e]]);
+        }
+        return allocation;
+    }
+
+}
@@ -0,0 +1,260 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Repairs a safe allocation of events to venues so that it also allocates one
+ * more event, moving as few of the allocated events as it can.
+ * </p>
+ *
+ * <p>
+ * The event is first placed directly at a free venue, if it can be placed at
+ * one safely. Otherwise, for each venue that can host the event, the repair
+ * works out a small set of allocated events that would have to move for the
+ * event to be placed there: the event already at the venue, and, for each
+ * corridor that would be overloaded, the allocated events generating the most
+ * traffic on that corridor until it would be within its capacity. These
+ * neighbourhoods are tried smallest first. For each, the events in it and the
+ * new event are re-allocated, to the free venues and the venues of the events
+ * in it, on top of the traffic of the events that do not move. Only if no
+ * neighbourhood can be re-allocated is every event allocated again from
+ * scratch.
+ * </p>
+ *
+ * <p>
+ * A neighbourhood is a guess: an allocation that moves other events may exist
+ * even when none of the neighbourhoods can be re-allocated, which is why the
+ * repair falls back to a full search before it reports that there is no safe
+ * allocation.
+ * </p>
+ */
+class AllocationRepair {
+
+    // the greatest number of allocated events that a repair will move
+    final static int MAX_NEIGHBOURHOOD = 8;
+
+    // the allocation being repaired
+    private final Map<Event, Venue> allocation;
+    // the venues that events may be allocated to
+    private final List<Venue> venues;
+    // the traffic generated by each of the allocated events
+    private final Map<Event, Traffic> eventTraffic;
+    // the traffic generated by all of the allocated events
+    private final Traffic traffic;
+    // the allocated events with traffic on each corridor
+    private final Map<Corridor, List<Event>> corridorEvents;
+    // the event allocated to each occupied venue
+    private final Map<Venue, Event> occupants;
+
+    /*
+     * invariant:
+     *
+     * allocation is a safe allocation of events to venues in the list venues
+     * &&
+     *
+     * eventTraffic.keySet().equals(allocation.keySet()) and maps each event to
+     * the traffic generated by hosting it at its venue &&
+     *
+     * traffic is the sum of the values of eventTraffic &&
+     *
+     * corridorEvents maps each corridor to the events in eventTraffic with
+     * traffic on it &&
+     *
+     * occupants is the inverse of allocation
+     */
+
+    /**
+     * Creates a repair of the given safe allocation, using the given venues.
+     *
+     * @require allocation != null && venues != null &&
+     *          !venues.contains(null) && venues does not contain duplicate
+     *          venues && allocation is a safe allocation of events to venues
+     *          in the list venues
+     * @ensure The given allocation and list are not modified.
+     */
+    AllocationRepair(Map<Event, Venue> allocation, List<Venue> venues) {
+        this.allocation = new HashMap<>(allocation);
+        this.venues = venues;
+        eventTraffic = new HashMap<>();
+        traffic = new Traffic();
+        corridorEvents = new HashMap<>();
+        occupants = new HashMap<>();
+        for (Map.Entry<Event, Venue> entry : allocation.entrySet()) {
+            Traffic generated = entry.getValue().getTraffic(entry.getKey());
+            eventTraffic.put(entry.getKey(), generated);
+            traffic.addTraffic(generated);
+            for (Corridor corridor : generated.getCorridorsWithTraffic()) {
+                corridorEvents.computeIfAbsent(corridor,
+                        c -> new ArrayList<>()).add(entry.getKey());
+            }
+            occupants.put(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * Returns a safe allocation of the allocated events and the given event,
+     * if there is one, or null otherwise.
+     *
+     * @require event != null && event is not allocated
+     * @ensure Returns a safe allocation of the allocated events and event to
+     *         the venues, moving as few of the allocated events as the repair
+     *         can find, or null if there is no safe allocation. The repair is
+     *         not modified.
+     */
+    Map<Event, Venue> add(Event event) {
+        // place the event directly at a free venue
+        for (Venue venue : venues) {
+            if (!occupants.containsKey(venue) && venue.canHost(event)
+                    && traffic.canAddSafely(venue.getTraffic(event))) {
+                Map<Event, Venue> result = new HashMap<>(allocation);
+                result.put(event, venue);
+                return result;
+            }
+        }
+
+        // re-allocate a neighbourhood of the event
+        for (Set<Event> neighbourhood : neighbourhoods(event)) {
+            Map<Event, Venue> result = reallocate(event, neighbourhood);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        // allocate every event again
+        List<Event> events = new ArrayList<>(allocation.keySet());
+        events.add(event);
+        return Allocator.allocate(events, venues);
+    }
+
+    /**
+     * Returns the sets of allocated events that would have to move for the
+     * given event to be placed at each of the venues that can host it,
+     * smallest first.
+     *
+     * @require event != null && event is not allocated
+     * @ensure Returns the distinct neighbourhoods of at most MAX_NEIGHBOURHOOD
+     *         events, in non-decreasing order of size. The repair is not
+     *         modified.
+     */
+    private List<Set<Event>> neighbourhoods(Event event) {
+        Set<Set<Event>> found = new HashSet<>();
+        for (Venue venue : venues) {
+            if (!venue.canHost(event)) {
+                continue;
+            }
+            Set<Event> neighbourhood = new HashSet<>();
+            // the traffic of the events in the neighbourhood
+            Traffic moved = new Traffic();
+            Event occupant = occupants.get(venue);
+            if (occupant != null) {
+                neighbourhood.add(occupant);
+                moved.addTraffic(eventTraffic.get(occupant));
+            }
+            Traffic generated = venue.getTraffic(event);
+            boolean safe = true; // whether the neighbourhood makes room
+            for (Corridor corridor : generated.getCorridorsWithTraffic()) {
+                // the traffic over capacity with the event placed at venue
+                int excess = traffic.getTraffic(corridor) + generated
+                        .getTraffic(corridor) - moved.getTraffic(corridor)
+                        - corridor.getCapacity();
+                if (excess <= 0) {
+                    continue;
+                }
+                // the events on the corridor, most traffic on it first
+                List<Event> heaviest = new ArrayList<>(corridorEvents
+                        .getOrDefault(corridor, Collections.emptyList()));
+                heaviest.sort((a, b) -> Integer.compare(eventTraffic.get(b)
+                        .getTraffic(corridor), eventTraffic.get(a).getTraffic(
+                                corridor)));
+                for (Event other : heaviest) {
+                    if (excess <= 0 || neighbourhood.size()
+                            == MAX_NEIGHBOURHOOD) {
+                        break;
+                    }
+                    if (neighbourhood.add(other)) {
+                        moved.addTraffic(eventTraffic.get(other));
+                        excess -= eventTraffic.get(other).getTraffic(corridor);
+                    }
+                }
+                if (excess > 0) {
+                    safe = false;
+                    break;
+                }
+            }
+            if (safe) {
+                found.add(neighbourhood);
+            }
+        }
+        List<Set<Event>> result = new ArrayList<>(found);
+        result.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        return result;
+    }
+
+    /**
+     * Returns a safe allocation of the allocated events and the given event
+     * in which only the events in the given neighbourhood and the given event
+     * are allocated to venues they are not already allocated to, if there is
+     * one, or null otherwise.
+     *
+     * @require event != null && event is not allocated && neighbourhood !=
+     *          null && neighbourhood is a subset of the allocated events
+     * @ensure Returns a safe allocation that agrees with the repaired
+     *         allocation outside neighbourhood, or null if none was found. The
+     *         repair is not modified.
+     */
+    private Map<Event, Venue> reallocate(Event event,
+            Set<Event> neighbourhood) {
+        List<Event> events = new ArrayList<>(neighbourhood);
+        events.add(event);
+        // the free venues, and the venues of the events in the neighbourhood
+        List<Venue> available = new ArrayList<>();
+        for (Venue venue : venues) {
+            Event occupant = occupants.get(venue);
+            if (occupant == null || neighbourhood.contains(occupant)) {
+                available.add(venue);
+            }
+        }
+        // the traffic of the events that do not move
+        Traffic background = new Traffic(traffic);
+        for (Event moved : neighbourhood) {
+            background.removeTraffic(eventTraffic.get(moved));
+        }
+
+        AllocationProblem problem = AllocationProblem.compile(events,
+                available, EventOrder.INPUT, background);
+        if (FeasibilityCheck.check(problem) != null) {
+            return null;
+        }
+        AllocationSearch search = new AllocationSearch(problem);
+        search.configure(new SearchOptions());
+        int[] assignment = search.first();
+        if (assignment == null) {
+            return null;
+        }
+        Map<Event, Venue> result = new HashMap<>(allocation);
+        result.putAll(problem.toAllocation(assignment));
+        return result;
+    }
+
+    /**
+     * Determines whether this class's invariant is true.
+     *
+     * @return true if the class invariant holds, false otherwise
+     */
+    boolean checkInvariant() {
+        Traffic total = new Traffic();
+        for (Map.Entry<Event, Venue> entry : allocation.entrySet()) {
+            if (!venues.contains(entry.getValue()) || occupants.get(entry
+                    .getValue()) != entry.getKey() || !eventTraffic.containsKey(
+                            entry.getKey())) {
+                return false;
+            }
+            total.addTraffic(eventTraffic.get(entry.getKey()));
+        }
+        return occupants.size() == allocation.size() && eventTraffic
+                .size() == allocation.size() && total.sameTraffic(traffic)
+                && traffic.isSafe();
+    }
+
+}
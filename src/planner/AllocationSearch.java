@@ -0,0 +1,629 @@
+package planner;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>
+ * A depth-first search for a safe allocation of the events of a compiled
+ * allocation problem to its venues.
+ * </p>
+ * 
+ * <p>
+ * Events are allocated in order of their ids, and the venues for each event are
+ * tried in the search's VenueOrder. The search keeps one running
+ * record of the load on each corridor: placing an event at a venue adds the
+ * traffic it generates there, and backtracking subtracts it again. A venue
+ * that would overload one of its corridors is rejected before the search
+ * descends into it. No objects are allocated while the search runs, unless
+ * nogood learning is turned on.
+ * </p>
+ * 
+ * <p>
+ * The used venues are kept as a bitset, and the problem gives the set of
+ * venues that can host each event as a bitset too, so the venues that may be
+ * tried for an event are found a word (64 venues) at a time.
+ * </p>
+ * 
+ * <p>
+ * If symmetry breaking is turned on, only canonical assignments are searched:
+ * interchangeable events are placed at venues in increasing order of venue
+ * id, and a venue is only used once every interchangeable venue before it is
+ * used. Every safe allocation can be turned into exactly one canonical one by
+ * swapping interchangeable events and venues, so a canonical safe allocation
+ * exists if and only if any safe allocation does.
+ * </p>
+ * 
+ * <p>
+ * If pruning is turned on, each time an event is placed the search checks that
+ * the remaining events can still be completed before descending: every block
+ * of remaining interchangeable events must have at least as many free venues
+ * that could host one of them under the current load as it has events, and
+ * the least traffic the remaining events must generate (see AllocationProblem)
+ * must fit in the capacity left on each corridor.
+ * </p>
+ * 
+ * <p>
+ * If nogood learning is turned on, each node whose sub-search fails is
+ * recorded in a NogoodCache, and a node that matches a recorded failure is cut
+ * off without being expanded.
+ * </p>
+ * 
+ * <p>
+ * If dominance pruning is turned on, a venue is skipped at a node if a venue
+ * that dominates it (see VenueModel) has already been rejected at that node
+ * because the event would overload one of its corridors there: the event
+ * would overload the same corridor at the dominated venue. The skip is only
+ * possible once the dominating venue has been tried, which the DOMINANT_FIRST
+ * venue order guarantees. The dominated venue would fail its own overload
+ * check, so the skip saves that check but never cuts off a subtree.
+ * </p>
+ * 
+ * <p>
+ * A search may be given a cancellation condition, which is polled every
+ * CHECK_INTERVAL nodes; once it holds, the search unwinds without a result.
+ * </p>
+ */
+class AllocationSearch {
+
+    // the number of nodes between polls of the cancellation condition
+    private final static int CHECK_INTERVAL = 1024;
+
+    // the problem being searched
+    private final AllocationProblem problem;
+    // the current load on each corridor, indexed by corridor id
+    private final int[] load;
+    // the venues used by the current partial allocation, as a bitset: venue v
+    // is used iff bit (v % 64) of used[v / 64] is set
+    private final long[] used;
+    // the venue id that each event is assigned to; only the first depth
+    // entries are meaningful
+    private final int[] assignment;
+    // whether only canonical assignments are searched
+    private boolean symmetryBreaking;
+    // the order in which venues are tried for each event
+    private VenueOrder venueOrder;
+    // for each venue, some of the venues that dominate it, or null if
+    // dominance pruning is off
+    private int[][] dominators;
+    // for each venue, the number of the last node at which an event would
+    // have overloaded a corridor there
+    private long[] overloadedAt;
+    // the number of nodes visited by this search, which numbers each node
+    private long visits;
+    // for each event, the venues to be tried for it in order, if the venue
+    // order is not the input order
+    private int[][] candidates;
+    // for each event, the peak utilisation of each of its candidates
+    private double[][] peaks;
+    // whether nodes that cannot be completed are cut off
+    private boolean pruning;
+    // the record of the sub-searches known to fail, or null if nogood
+    // learning is off
+    private NogoodCache nogoods;
+    // the record of the work done by the search
+    private SearchStatistics statistics;
+    // the condition under which the search should stop early
+    private BooleanSupplier cancelled;
+    // the number of nodes visited until the next poll of cancelled
+    private int untilCheck;
+    // true if the search has been stopped by the cancellation condition
+    private boolean stopped;
+    // the id of the event of the node being visited
+    private int depth;
+
+    /**
+     * Creates a new search of the given problem, starting from the empty
+     * allocation.
+     * 
+     * @require problem != null
+     */
+    AllocationSearch(AllocationProblem problem) {
+        this.problem = problem;
+        load = new int[problem.corridorCount()];
+        used = new long[(problem.venueCount() + 63) / 64];
+        assignment = new int[problem.eventCount()];
+        venueOrder = VenueOrder.INPUT;
+        statistics = new SearchStatistics();
+        cancelled = () -> false;
+        untilCheck = CHECK_INTERVAL;
+    }
+
+    /**
+     * Sets the order in which the venues for each event are tried. Venues are
+     * tried in the input order for a new search.
+     * 
+     * @require venueOrder != null
+     */
+    void setVenueOrder(VenueOrder venueOrder) {
+        this.venueOrder = venueOrder;
+        if (venueOrder == VenueOrder.LEAST_PEAK_UTILISATION
+                && candidates == null) {
+            candidates = new int[problem.eventCount()][problem.venueCount()];
+            peaks = new double[problem.eventCount()][problem.venueCount()];
+        }
+    }
+
+    /**
+     * Sets whether only canonical assignments of interchangeable events and
+     * venues are searched. Symmetry breaking is off for a new search.
+     */
+    void setSymmetryBreaking(boolean symmetryBreaking) {
+        this.symmetryBreaking = symmetryBreaking;
+    }
+
+    /**
+     * Returns true if only canonical assignments are searched, and false
+     * otherwise.
+     */
+    boolean isSymmetryBreaking() {
+        return symmetryBreaking;
+    }
+
+    /**
+     * Sets whether nodes that cannot be completed are cut off. Pruning is off
+     * for a new search.
+     */
+    void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Sets whether the nodes whose sub-searches fail are recorded, so that
+     * nodes that match them are cut off. Nogood learning is off for a new
+     * search; turning it on again keeps the failures already recorded.
+     */
+    void setNogoodLearning(boolean nogoodLearning) {
+        if (!nogoodLearning) {
+            nogoods = null;
+        } else if (nogoods == null) {
+            nogoods = new NogoodCache(problem);
+        }
+    }
+
+    /**
+     * Sets whether a venue is skipped at a node once a venue that dominates it
+     * has been found to overload a corridor there. Dominance pruning is off
+     * for a new search.
+     */
+    void setDominancePruning(boolean dominancePruning) {
+        if (!dominancePruning) {
+            dominators = null;
+        } else if (dominators == null) {
+            dominators = problem.getDominators();
+            overloadedAt = new long[problem.venueCount()];
+        }
+    }
+
+    /**
+     * Sets the record to which the work done by the search is added.
+     * 
+     * @require statistics != null
+     */
+    void setStatistics(SearchStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Applies the given options to this search: the venue order, pruning,
+     * nogood learning, dominance pruning and symmetry breaking (which is
+     * always turned on). The event order of the options is applied when the
+     * problem is compiled.
+     * 
+     * @require options != null
+     */
+    void configure(SearchOptions options) {
+        setSymmetryBreaking(true);
+        setVenueOrder(options.getVenueOrder());
+        setPruning(options.isPruning());
+        setNogoodLearning(options.isNogoodLearning());
+        setDominancePruning(options.isDominancePruning());
+    }
+
+    /**
+     * Sets the condition under which the search should stop early. The
+     * condition is polled periodically rather than at every node.
+     * 
+     * @require cancelled != null
+     */
+    void setCancellation(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Returns the id of the event that the search was placing at the node it
+     * visited last, which is the number of events placed above that node.
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns true if the last search was stopped by the cancellation
+     * condition, and false otherwise.
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns the first safe allocation found, as an array holding the venue
+     * id assigned to each event id, or null if there is no safe allocation.
+     * 
+     * @ensure Returns the first safe assignment in search order (i.e. the
+     *         lexicographically smallest safe assignment, if the venue order is
+     *         the input order), or null if there is none. The search is left in
+     *         its initial state.
+     */
+    int[] first() {
+        return firstFrom(0);
+    }
+
+    /**
+     * Returns the first safe extension of the events already placed, as an
+     * array holding the venue id assigned to each event id, or null if there
+     * is no safe extension or the search was cancelled.
+     * 
+     * @require 0 <= depth <= problem.eventCount() && exactly the events with
+     *          ids less than depth are placed
+     * @ensure Returns the first safe assignment in search order that extends
+     *         the current one, or null if there is none or the search was
+     *         cancelled. The placed events are as they were on entry.
+     */
+    int[] firstFrom(int depth) {
+        stopped = false;
+        if (pruning && !canComplete(depth)) {
+            return null;
+        }
+        if (search(depth)) {
+            return assignment.clone();
+        }
+        return null;
+    }
+
+    /**
+     * Extends the current partial allocation of the events with ids less than
+     * event to a safe allocation of all of the events.
+     * 
+     * @require the events with ids less than event are placed, safely
+     * @ensure Returns true, leaving the safe allocation in assignment, if the
+     *         partial allocation can be extended; otherwise (or if the search
+     *         has been cancelled) returns false.
+     *         Either way the load and used venues are as they were on entry.
+     */
+    private boolean search(int event) {
+        /* BASE CASE: no more events to allocate */
+        if (event == problem.eventCount()) {
+            return true;
+        }
+
+        statistics.addNode();
+        depth = event;
+        if (--untilCheck == 0) {
+            untilCheck = CHECK_INTERVAL;
+            stopped = cancelled.getAsBoolean();
+        }
+        if (stopped) {
+            return false;
+        }
+
+        // the venue of the event before, if it constrains this node's venue
+        int previous = (symmetryBreaking && problem.isSameAsPrevious(event)
+                ? assignment[event - 1] : -1);
+        // whether this node is looked up in and recorded in the nogood cache
+        boolean learning = nogoods != null && problem.eventCount()
+                - event >= NogoodCache.MIN_REMAINING;
+        if (learning) {
+            if (nogoods.isNogood(event, previous, used, load)) {
+                statistics.addNogoodHit();
+                return false;
+            }
+            statistics.addNogoodMiss();
+        }
+
+        /* RECURSIVE CASE: there is at least one more event to allocate. */
+        long node = ++visits; // the number of this node
+        if (venueOrder == VenueOrder.INPUT) {
+            // interchangeable events take venues in increasing order, so the
+            // venues before the previous one need not be tried
+            for (int venue = nextFreeHost(event, Math.max(previous,
+                    0)); venue < problem.venueCount(); venue = nextFreeHost(
+                            event, venue + 1)) {
+                if (extend(event, venue, node)) {
+                    return true;
+                }
+            }
+        } else if (venueOrder == VenueOrder.DOMINANT_FIRST) {
+            for (int venue : problem.getDominanceOrder()) {
+                if (problem.getVenueCapacity(venue) < problem.getEventSize(
+                        event)) {
+                    break; // the rest of the venues are smaller still
+                }
+                if (extend(event, venue, node)) {
+                    return true;
+                }
+            }
+        } else {
+            int count = orderCandidates(event);
+            for (int i = 0; i < count; i++) {
+                if (extend(event, candidates[event][i], node)) {
+                    return true;
+                }
+            }
+        }
+        if (learning && !stopped) {
+            nogoods.add(event, previous, used, load);
+        }
+        return false;
+    }
+
+    /**
+     * Places the given event at the given venue, if it may be placed there,
+     * and extends the result to a safe allocation of all of the events, at the
+     * node with the given number.
+     * 
+     * @require the events with ids less than event are placed, safely
+     * @ensure Returns true, leaving the safe allocation in assignment, if the
+     *         event can be placed at the venue and the result extended;
+     *         otherwise (or if the search has been cancelled) returns false.
+     *         Either way the load and used venues are as they were on entry.
+     */
+    private boolean extend(int event, int venue, long node) {
+        if (!canPlace(event, venue)) {
+            return false;
+        }
+        if (dominators != null && isDominated(venue, node)) {
+            statistics.addDominancePrune();
+            return false;
+        }
+        if (!place(event, venue)) {
+            if (dominators != null) {
+                overloadedAt[venue] = node;
+            }
+            return false; // the venue would overload a corridor
+        }
+        if (pruning && !canComplete(event + 1)) {
+            remove(event, venue);
+            return false;
+        }
+        boolean found = search(event + 1);
+        remove(event, venue);
+        return found;
+    }
+
+    /**
+     * Returns true if a venue that dominates the given venue has been found
+     * to overload a corridor at the node with the given number.
+     * 
+     * @require dominators != null
+     */
+    private boolean isDominated(int venue, long node) {
+        for (int dominator : dominators[venue]) {
+            if (overloadedAt[dominator] == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fills candidates[event] with the venues at which the given event may be
+     * placed, in the order in which they should be tried.
+     * 
+     * @require venueOrder == VenueOrder.LEAST_PEAK_UTILISATION && the events
+     *          with ids less than event are placed
+     * @ensure Returns the number of candidates, which are in ascending order of
+     *         the peak utilisation of their corridors with the event placed
+     *         there (and of venue id, for venues with the same peak).
+     */
+    private int orderCandidates(int event) {
+        int count = 0; // the number of candidates found so far
+        for (int venue = nextFreeHost(event, 0); venue < problem
+                .venueCount(); venue = nextFreeHost(event, venue + 1)) {
+            if (canPlace(event, venue)) {
+                count = addCandidate(event, venue, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Inserts the given venue into candidates[event], keeping the candidates
+     * in ascending order of peak utilisation.
+     * 
+     * @require the first count entries of candidates[event] are the
+     *          candidates found so far, in order
+     * @ensure Returns count + 1.
+     */
+    private int addCandidate(int event, int venue, int count) {
+        int[] venues = candidates[event];
+        double[] keys = peaks[event];
+        // the peak utilisation of the venue's corridors
+        double peak = 0;
+        int[] corridors = problem.getVenueCorridors(venue);
+        for (int k = 0; k < corridors.length; k++) {
+            int corridor = corridors[k];
+            peak = Math.max(peak, (double) (load[corridor] + problem
+                    .getTraffic(venue, event, k)) / problem
+                            .getCorridorCapacity(corridor));
+        }
+        // insert the venue after the candidates with the same or a lower
+        // peak
+        int i = count++;
+        while (i > 0 && keys[i - 1] > peak) {
+            venues[i] = venues[i - 1];
+            keys[i] = keys[i - 1];
+            i--;
+        }
+        venues[i] = venue;
+        keys[i] = peak;
+        return count;
+    }
+
+    /**
+     * Returns true if the current partial allocation passes the pruning
+     * checks, recording the check that failed in the statistics otherwise.
+     * 
+     * @require the events with ids less than event are placed, safely
+     * @ensure Returns false only if the partial allocation cannot be extended
+     *         to a safe allocation.
+     */
+    boolean canComplete(int event) {
+        int[] corridors = problem.getBoundCorridors(event);
+        for (int k = 0; k < corridors.length; k++) {
+            int corridor = corridors[k];
+            if (load[corridor] + problem.getBoundTraffic(event,
+                    k) > problem.getCorridorCapacity(corridor)) {
+                statistics.addBoundPrune();
+                return false;
+            }
+        }
+
+        int start = event; // the first remaining event of the current block
+        while (start < problem.eventCount()) {
+            int end = start + 1; // the event after the current block
+            while (end < problem.eventCount() && problem.isSameAsPrevious(
+                    end)) {
+                end++;
+            }
+            // the number of free venues found that fit an event of the block
+            int found = 0;
+            for (int venue = nextFreeHost(start, 0); venue < problem
+                    .venueCount() && found < end - start; venue = nextFreeHost(
+                            start, venue + 1)) {
+                if (fits(start, venue)) {
+                    found++;
+                }
+            }
+            if (found < end - start) {
+                statistics.addForwardCheckPrune();
+                return false;
+            }
+            start = end;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the venue with the given id is used by the current
+     * partial allocation, and false otherwise.
+     * 
+     * @require 0 <= venue < problem.venueCount()
+     */
+    boolean isUsed(int venue) {
+        return (used[venue >>> 6] & (1L << venue)) != 0;
+    }
+
+    /**
+     * Returns the load that the current partial allocation places on the
+     * corridor with the given id.
+     * 
+     * @require 0 <= corridor < problem.corridorCount()
+     */
+    int getLoad(int corridor) {
+        return load[corridor];
+    }
+
+    /**
+     * Returns the id of the first free venue, from the given id onwards, that
+     * can host the given event, or problem.venueCount() if there is none. The
+     * venues are scanned a word of the bitsets at a time.
+     * 
+     * @require 0 <= event < problem.eventCount() && 0 <= from
+     */
+    int nextFreeHost(int event, int from) {
+        long[] hosts = problem.getHostWords(event);
+        int w = from >>> 6; // the index of the word being scanned
+        if (w >= used.length) {
+            return problem.venueCount();
+        }
+        // the free venues in the word that can host the event, from onwards
+        long free = hosts[w] & ~used[w] & (-1L << from);
+        while (free == 0) {
+            if (++w == used.length) {
+                return problem.venueCount();
+            }
+            free = hosts[w] & ~used[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(free);
+    }
+
+    /**
+     * Returns true if the given event may be placed at the given venue, without
+     * regard to traffic: that is, if the venue is free and can host the event
+     * and, when symmetry breaking is on, the placement is canonical.
+     * 
+     * @require the events with ids less than event are placed
+     */
+    boolean canPlace(int event, int venue) {
+        if (isUsed(venue) || !problem.canHost(venue, event)) {
+            return false;
+        }
+        if (symmetryBreaking) {
+            // the interchangeable venue that must be used before this one
+            int previous = problem.getPreviousEquivalent(venue);
+            if (previous >= 0 && !isUsed(previous)) {
+                return false;
+            }
+            if (problem.isSameAsPrevious(event)
+                    && venue < assignment[event - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Places the given event at the given venue, if doing so does not overload
+     * any corridor.
+     * 
+     * @require venue is not used && problem.canHost(venue, event)
+     * @ensure Returns true and adds the event's traffic to the load if every
+     *         corridor of the venue stays within its capacity; otherwise
+     *         returns false and leaves the load unchanged.
+     */
+    boolean place(int event, int venue) {
+        if (!fits(event, venue)) {
+            return false;
+        }
+        int[] corridors = problem.getVenueCorridors(venue);
+        for (int k = 0; k < corridors.length; k++) {
+            load[corridors[k]] += problem.getTraffic(venue, event, k);
+        }
+        used[venue >>> 6] |= 1L << venue;
+        assignment[event] = venue;
+        return true;
+    }
+
+    /**
+     * Returns true if placing the given event at the given venue would leave
+     * every corridor of the venue within its capacity, and false otherwise.
+     * 
+     * @require problem.canHost(venue, event)
+     */
+    private boolean fits(int event, int venue) {
+        int[] corridors = problem.getVenueCorridors(venue);
+        for (int k = 0; k < corridors.length; k++) {
+            int corridor = corridors[k];
+            if (load[corridor] + problem.getTraffic(venue, event,
+                    k) > problem.getCorridorCapacity(corridor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Undoes a call to place(event, venue) that returned true.
+     * 
+     * @require event is placed at venue
+     * @ensure Subtracts the event's traffic from the load and frees the venue.
+     */
+    void remove(int event, int venue) {
+        int[] corridors = problem.getVenueCorridors(venue);
+        for (int k = 0; k < corridors.length; k++) {
+            load[corridors[k]] -= problem.getTraffic(venue, event, k);
+        }
+        used[venue >>> 6] &= ~(1L << venue);
+    }
+
+}
@@ -0,0 +1,201 @@
+package planner;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * A lazy enumeration of the safe allocations of the events of a compiled
+ * allocation problem to its venues, each given as an array holding the venue
+ * id assigned to each event id.
+ * </p>
+ * 
+ * <p>
+ * The depth-first search is driven by an explicit stack with one level per
+ * event, and is only advanced as far as the next safe allocation each time
+ * one is requested. The memory used is therefore bounded by the number of
+ * events, not by the number of safe allocations.
+ * </p>
+ * 
+ * <p>
+ * Splitting hands the upper half of the venues still to be tried at the
+ * shallowest level of the stack that has any to a new spliterator, which
+ * fixes the assignments above that level. The subtrees covered by this
+ * spliterator and the new one are disjoint, so a parallel stream partitions
+ * the search tree across its workers.
+ * </p>
+ */
+class AllocationSpliterator implements Spliterator<int[]> {
+
+    // the problem being searched
+    private final AllocationProblem problem;
+    // the search holding the load and used venues of the current assignment
+    private final AllocationSearch search;
+    // the venue id assigned to each placed event
+    private final int[] assignment;
+    // for each level of the stack, the next venue id to be tried
+    private final int[] next;
+    // for each level of the stack, the venue id that trying stops before
+    private final int[] end;
+    // the level of the stack below which assignments are fixed
+    private final int base;
+    // the number of events currently placed
+    private int depth;
+    // true if there are no more safe allocations to be returned
+    private boolean exhausted;
+
+    /*
+     * invariant:
+     * 
+     * base <= depth <= problem.eventCount() &&
+     * 
+     * the events with ids less than depth are placed in search at the venues
+     * given by assignment &&
+     * 
+     * for each level d with base <= d < depth, next[d] == assignment[d] + 1
+     * 
+     * (If depth == problem.eventCount() then the assignment has already been
+     * returned, and the search backtracks on the next advance.)
+     */
+
+    /**
+     * Creates an enumeration of all of the safe allocations of the given
+     * problem, or only of the canonical ones if symmetryBreaking is true.
+     * 
+     * @require problem != null
+     */
+    AllocationSpliterator(AllocationProblem problem,
+            boolean symmetryBreaking) {
+        this(problem, symmetryBreaking, new int[0], 0, problem.venueCount());
+    }
+
+    /**
+     * Creates an enumeration of the safe allocations (or the canonical ones if
+     * symmetryBreaking is true) that extend the given prefix by placing the
+     * next event at a venue with an id in [start, stop).
+     * 
+     * @require problem != null && prefix != null && prefix.length <
+     *          problem.eventCount() (unless problem.eventCount() == 0) &&
+     *          prefix is a safe partial assignment
+     */
+    private AllocationSpliterator(AllocationProblem problem,
+            boolean symmetryBreaking, int[] prefix, int start, int stop) {
+        this.problem = problem;
+        search = new AllocationSearch(problem);
+        search.setSymmetryBreaking(symmetryBreaking);
+        assignment = Arrays.copyOf(prefix, problem.eventCount());
+        next = new int[problem.eventCount() + 1];
+        end = new int[problem.eventCount() + 1];
+        for (int event = 0; event < prefix.length; event++) {
+            search.place(event, prefix[event]);
+        }
+        base = prefix.length;
+        depth = base;
+        next[depth] = start;
+        end[depth] = stop;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super int[]> action) {
+        if (exhausted) {
+            return false;
+        }
+        if (problem.eventCount() == 0) {
+            // the only allocation of no events is the empty one
+            exhausted = true;
+            action.accept(new int[0]);
+            return true;
+        }
+        if (depth == problem.eventCount()) {
+            backtrack();
+        }
+        while (!exhausted) {
+            // the next venue at which the event at this level can be placed
+            int venue = nextVenue(depth);
+            if (venue < 0) {
+                backtrack();
+            } else {
+                assignment[depth] = venue;
+                depth++;
+                if (depth == problem.eventCount()) {
+                    action.accept(assignment.clone());
+                    return true;
+                }
+                next[depth] = 0;
+                end[depth] = problem.venueCount();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Places the event at the given level of the stack at the next venue that
+     * it can safely use, if there is one.
+     * 
+     * @require level == depth < problem.eventCount()
+     * @ensure Returns the venue at which the event was placed, with next[level]
+     *         moved past it, or -1 if there are no more such venues.
+     */
+    private int nextVenue(int level) {
+        while (next[level] < end[level]) {
+            int venue = search.nextFreeHost(level, next[level]);
+            if (venue >= end[level]) {
+                next[level] = end[level];
+                break;
+            }
+            next[level] = venue + 1;
+            if (search.canPlace(level, venue) && search.place(level,
+                    venue)) {
+                return venue;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the deepest placed event, or marks the enumeration as exhausted
+     * if there are no more levels of this spliterator to backtrack to.
+     */
+    private void backtrack() {
+        if (depth == base) {
+            exhausted = true;
+            return;
+        }
+        depth--;
+        search.remove(depth, assignment[depth]);
+    }
+
+    @Override
+    public Spliterator<int[]> trySplit() {
+        if (exhausted) {
+            return null;
+        }
+        for (int level = base; level <= depth
+                && level < problem.eventCount(); level++) {
+            // the number of venues still to be tried at this level
+            int remaining = end[level] - next[level];
+            // keep at least the current subtree (or one venue at the frontier)
+            if (remaining >= (level < depth ? 1 : 2)) {
+                int mid = next[level] + (level < depth ? remaining / 2
+                        : (remaining + 1) / 2);
+                int stop = end[level];
+                end[level] = mid;
+                return new AllocationSpliterator(problem, search
+                        .isSymmetryBreaking(), Arrays.copyOf(assignment,
+                                level), mid, stop);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return exhausted ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT;
+    }
+
+}
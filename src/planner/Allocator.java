@@ -1,9 +1,21 @@
 package planner;
 
+import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.*;
+import java.util.stream.*;
 
 /**
- * Provides a method for finding a safe allocation of events to venues.
+ * <p>
+ * Provides methods for finding a safe allocation of events to venues.
+ * </p>
+ * 
+ * <p>
+ * None of the methods modify the lists of events and venues they are given,
+ * and each call compiles its own copy of the problem, so the methods may be
+ * called from several threads at once with the same lists.
+ * </p>
  */
 public class Allocator {
 
@@ -26,92 +38,594 @@ public class Allocator {
      */
     public static Map<Event, Venue> allocate(List<Event> events,
             List<Venue> venues) {
-        // DO NOT MODIFY THE IMPLEMENTATION OF THIS METHOD
-        Set<Map<Event, Venue>> allocations = allocations(events, venues);
-        if (allocations.isEmpty()) {
+        return allocate(events, venues, new SearchOptions(),
+                new SearchStatistics());
+    }
+
+    /**
+     * <p>
+     * Returns a safe allocation of events to venues, if there is at least one
+     * possible safe allocation, or null otherwise, allocating the events in the
+     * given order and trying the venues for each event in the given order.
+     * </p>
+     * 
+     * <p>
+     * The orders do not affect whether a safe allocation is found, but they
+     * can make a large difference to how long it takes to find one, and may
+     * change which of the safe allocations is returned.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @param eventOrder
+     *            the order in which the events are allocated
+     * @param venueOrder
+     *            the order in which the venues are tried for each event
+     * @return a safe allocation of events to venues, or null if there is none
+     * @throws NullPointerException
+     *             if eventOrder or venueOrder is null
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static Map<Event, Venue> allocate(List<Event> events,
+            List<Venue> venues, EventOrder eventOrder, VenueOrder venueOrder) {
+        SearchOptions options = new SearchOptions();
+        options.setEventOrder(eventOrder);
+        options.setVenueOrder(venueOrder);
+        return allocate(events, venues, options, new SearchStatistics());
+    }
+
+    /**
+     * <p>
+     * Returns a safe allocation of events to venues, if there is at least one
+     * possible safe allocation, or null otherwise, searching for it as set out
+     * by the given options.
+     * </p>
+     * 
+     * <p>
+     * The work done by the search is added to the given statistics, so that
+     * the effect of the options can be measured. No search is done at all if
+     * checkFeasibility shows that there is no safe allocation.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @param options
+     *            the options controlling the search
+     * @param statistics
+     *            the record to add the work done by the search to
+     * @return a safe allocation of events to venues, or null if there is none
+     * @throws NullPointerException
+     *             if options or statistics is null
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static Map<Event, Venue> allocate(List<Event> events,
+            List<Venue> venues, SearchOptions options,
+            SearchStatistics statistics) {
+        if (options == null || statistics == null) {
+            throw new NullPointerException(
+                    "The options and statistics cannot be null.");
+        }
+        AllocationProblem problem = AllocationProblem.compile(events, venues,
+                options.getEventOrder());
+        // the assignment found, or null if there is none
+        int[] assignment = first(problem, options, statistics, null, null);
+        if (assignment == null) {
             // returns null to signify that there is no possible safe allocation
             return null;
-        } else {
-            // returns one (any one) of the possible safe allocations
-            return allocations.iterator().next();
         }
+        return problem.toAllocation(assignment);
+    }
+
+    /**
+     * Returns the first safe assignment of the events of the given problem to
+     * its venues found by a search set out by the given options, or null if
+     * there is none or the search was stopped by the given cancellation
+     * condition. The corridor-disjoint groups of venues are searched
+     * separately if the options ask for decomposition and there is more than
+     * one group.
+     * 
+     * @require problem != null && options != null && statistics != null
+     * @ensure No search is done if FeasibilityCheck.check(problem) shows that
+     *         there is no safe allocation. Otherwise the work done is added to
+     *         statistics, the search stops early once cancellation (if not
+     *         null) holds, and depth (if not null) is given the current depth
+     *         of the search before it starts.
+     */
+    static int[] first(AllocationProblem problem, SearchOptions options,
+            SearchStatistics statistics, BooleanSupplier cancellation,
+            Consumer<IntSupplier> depth) {
+        if (FeasibilityCheck.check(problem) != null) {
+            return null;
+        }
+        DecomposedSearch decomposed = (options.isDecomposition()
+                ? new DecomposedSearch(problem, options, statistics) : null);
+        if (decomposed != null && decomposed.componentCount() > 1) {
+            if (cancellation != null) {
+                decomposed.setCancellation(cancellation);
+            }
+            if (depth != null) {
+                depth.accept(decomposed::getDepth);
+            }
+            return decomposed.first();
+        }
+        AllocationSearch search = new AllocationSearch(problem);
+        search.configure(options);
+        search.setStatistics(statistics);
+        if (cancellation != null) {
+            search.setCancellation(cancellation);
+        }
+        if (depth != null) {
+            depth.accept(search::getDepth);
+        }
+        return search.first();
+    }
+
+    /**
+     * <p>
+     * Returns the safe allocation of events to venues that minimises the given
+     * objective, if there is at least one possible safe allocation, or null
+     * otherwise.
+     * </p>
+     * 
+     * <p>
+     * The allocation is found by branch and bound, which cuts off every part
+     * of the search that provably cannot beat the best allocation found so
+     * far, rather than enumerating every safe allocation.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @param objective
+     *            the objective to be minimised
+     * @return a safe allocation of events to venues with the smallest possible
+     *         objective value, or null if there is no safe allocation
+     * @throws NullPointerException
+     *             if objective is null
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static Map<Event, Venue> allocateOptimal(List<Event> events,
+            List<Venue> venues, Objective objective) {
+        return optimise(events, venues, objective, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>
+     * Returns the best safe allocation of events to venues, by the given
+     * objective, that can be found within the given time budget.
+     * </p>
+     * 
+     * <p>
+     * The search is the same as for allocateOptimal(events, venues,
+     * objective), except that it stops once the time budget has been used up,
+     * and then returns the best safe allocation it has found so far (or null
+     * if it has not found one yet). If the search finishes within the budget,
+     * the allocation returned is optimal.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @param objective
+     *            the objective to be minimised
+     * @param timeBudget
+     *            the time budget for the search, in milliseconds
+     * @return the best safe allocation of events to venues found within the
+     *         time budget, or null if none was found
+     * @throws NullPointerException
+     *             if objective is null
+     * @throws IllegalArgumentException
+     *             if timeBudget is less than or equal to zero
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static Map<Event, Venue> allocateOptimal(List<Event> events,
+            List<Venue> venues, Objective objective, long timeBudget) {
+        if (timeBudget <= 0) {
+            throw new IllegalArgumentException(
+                    "The time budget must be greater than zero.");
+        }
+        return optimise(events, venues, objective, System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeBudget));
+    }
+
+    /**
+     * Returns the best safe allocation of events to venues, by the given
+     * objective, found by branch and bound before the given deadline.
+     * 
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues && deadline
+     *          is a value of System.nanoTime(), or Long.MAX_VALUE for none.
+     * @ensure Returns the best safe allocation found, or null if none was
+     *         found.
+     * @throws NullPointerException
+     *             if objective is null
+     */
+    private static Map<Event, Venue> optimise(List<Event> events,
+            List<Venue> venues, Objective objective, long deadline) {
+        if (objective == null) {
+            throw new NullPointerException("The objective cannot be null.");
+        }
+        AllocationProblem problem = AllocationProblem.compile(events, venues);
+        if (FeasibilityCheck.check(problem) != null) {
+            return null;
+        }
+        int[] assignment = new OptimisingSearch(problem, objective, deadline)
+                .optimise();
+        if (assignment == null) {
+            return null;
+        }
+        return problem.toAllocation(assignment);
+    }
+
+    /**
+     * <p>
+     * Returns the best allocation of events to venues found by a local search
+     * within the budget set by the given options, for problems too large for
+     * the exact search.
+     * </p>
+     * 
+     * <p>
+     * The time budget is measured from the call to this method, so it
+     * includes the time taken to prepare the events and venues for the
+     * search, not just the search itself.
+     * </p>
+     * 
+     * <p>
+     * The allocation may not be safe, and may leave some of the events
+     * unallocated (there may be more events than venues): the search
+     * minimises the total traffic over capacity on all corridors plus a
+     * weighted cost of the unallocated events (see LocalSearchOptions and
+     * LocalSearch). The progress listener of the options, if any, is told of
+     * the best allocation found so far as the search runs.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @param options
+     *            the options that control the search
+     * @return the best allocation found
+     * @throws NullPointerException
+     *             if options is null
+     * @throws IllegalArgumentException
+     *             if the options have neither a time budget nor an iteration
+     *             limit
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static ApproximateAllocation allocateApproximately(
+            List<Event> events, List<Venue> venues,
+            LocalSearchOptions options) {
+        if (options == null) {
+            throw new NullPointerException("The options cannot be null.");
+        }
+        if (options.getTimeBudget() == Long.MAX_VALUE && options
+                .getIterationLimit() == Long.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "The search must have a time budget or an iteration "
+                            + "limit.");
+        }
+        long start = System.nanoTime(); // the budget covers compiling
+        AllocationProblem problem = AllocationProblem.compile(events, venues);
+        return new LocalSearch(problem, options, start).run();
     }
 
     /**
-     * Returns the set of all possible safe allocations of events to venues.
+     * <p>
+     * Returns a reason why there is no safe allocation of events to venues, if
+     * one can be found without searching, or null otherwise.
+     * </p>
+     * 
+     * <p>
+     * The checks take polynomial time. If one of them fails there is no safe
+     * allocation, but if they all pass (and null is returned) there may or may
+     * not be a safe allocation.
+     * </p>
      * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @return a reason why there is no safe allocation, or null if none of the
+     *         checks finds one
      * @require events != null && venues != null && !events.contains(null) &&
      *          !venues.contains(null) && events does not contain duplicate
      *          events && venues does not contain duplicate venues.
-     * @ensure Returns the set of all possible safe allocations of events to
-     *         venues. (Note: if there are no possible allocations, then this
-     *         method should return an empty set of allocations.)
      */
-    private static Set<Map<Event, Venue>> allocations(List<Event> events,
+    public static Infeasibility checkFeasibility(List<Event> events,
             List<Venue> venues) {
-        // set of possible allocations
-        Set<Map<Event, Venue>> result = new HashSet<>();
+        return FeasibilityCheck.check(AllocationProblem.compile(events,
+                venues));
+    }
 
-        /* BASE CASE: no more events to allocate */
-        if (events.isEmpty()) {
-            result.add(new HashMap<Event, Venue>());
-            return result;
+    /**
+     * <p>
+     * Returns a safe allocation of events to venues, if there is at least one
+     * possible safe allocation, or null otherwise, searching for it with the
+     * given number of worker threads.
+     * </p>
+     * 
+     * <p>
+     * Subtrees of the search are shared out between the threads, and all of
+     * the threads stop as soon as the result is known. If deterministic is
+     * true, the allocation returned is the same one that allocate(events,
+     * venues) returns; otherwise it is the first safe allocation found by any
+     * of the threads, which may differ from run to run.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @param parallelism
+     *            the number of worker threads to search with
+     * @param deterministic
+     *            whether the allocation returned must be the same one that
+     *            allocate(events, venues) returns
+     * @return a safe allocation of events to venues, or null if there is none
+     * @throws IllegalArgumentException
+     *             if parallelism is less than or equal to zero
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static Map<Event, Venue> allocate(List<Event> events,
+            List<Venue> venues, int parallelism, boolean deterministic) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(
+                    "The parallelism must be greater than zero.");
+        }
+        AllocationProblem problem = AllocationProblem.compile(events, venues);
+        if (FeasibilityCheck.check(problem) != null) {
+            return null;
+        }
+        int[] assignment = new ParallelAllocationSearch(problem, parallelism,
+                deterministic).first();
+        if (assignment == null) {
+            return null;
         }
+        return problem.toAllocation(assignment);
+    }
 
-        /* RECURSIVE CASE: there is at least one more event to allocate. */
-        // the event to be allocated next
-        Event event = events.get(0);
-        // the rest of the events to be allocated
-        List<Event> remainingEvents = events.subList(1, events.size());
-        for (int i = 0; i < venues.size(); i++) {
-            // find possible safe allocations of event at the ith venue
-            Venue venue = venues.get(i);
-            if (venue.canHost(event)) {
-                venues.remove(i); // remove venue from available venues
-                Set<Map<Event, Venue>> allocations = allocations(
-                        remainingEvents, venues);
-                for (Map<Event, Venue> allocation : allocations) {
-                    allocation.put(event, venue);
-                    if (safeTraffic(allocation)) {
-                        result.add(allocation);
-                    }
-                }
-                venues.add(i, venue); // add venue back to available venues
-            }
+    /**
+     * <p>
+     * Returns an iterator over all of the possible safe allocations of events
+     * to venues.
+     * </p>
+     * 
+     * <p>
+     * The allocations are found lazily, one at a time, as the iterator is
+     * advanced, so the memory used does not grow with the number of safe
+     * allocations. The iterator reflects the events and venues at the time
+     * this method is called; later changes to the lists do not affect it.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @return an iterator that returns each safe allocation of events to
+     *         venues exactly once (and returns no allocations if there are no
+     *         safe allocations)
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static Iterator<Map<Event, Venue>> allocationIterator(
+            List<Event> events, List<Venue> venues) {
+        return allocationStream(events, venues, false).iterator();
+    }
+
+    /**
+     * <p>
+     * Returns a stream of all of the possible safe allocations of events to
+     * venues.
+     * </p>
+     * 
+     * <p>
+     * The allocations are found lazily, as the stream is consumed, so the
+     * memory used does not grow with the number of safe allocations. Only one
+     * allocation is searched for in each class of allocations that differ just
+     * by swapping events of the same size, or venues with the same capacity
+     * and capacity traffic; the rest of the class is then generated from it
+     * without further search. If parallel is true, the stream is parallel and
+     * the search for allocations is split across its worker threads. The
+     * stream reflects the events and venues at the time this method is
+     * called; later changes to the lists do not affect it.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @param parallel
+     *            whether the returned stream is parallel
+     * @return a stream containing each safe allocation of events to venues
+     *         exactly once (which is empty if there are no safe allocations)
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static Stream<Map<Event, Venue>> allocationStream(
+            List<Event> events, List<Venue> venues, boolean parallel) {
+        AllocationProblem problem = AllocationProblem.compile(events, venues);
+        SymmetryExpansion expansion = new SymmetryExpansion(problem);
+        return StreamSupport.stream(expansion.expandAll(
+                new AllocationSpliterator(problem, true)), parallel).map(
+                        problem::toAllocation);
+    }
+
+    /**
+     * <p>
+     * Returns the number of possible safe allocations of events to venues.
+     * </p>
+     * 
+     * <p>
+     * No allocations are constructed, and sub-problems that are reached more
+     * than once (the same remaining events and available venues, under the
+     * same corridor load) are only counted once, so this can count the safe
+     * allocations of problems that have too many to enumerate.
+     * </p>
+     * 
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @return the number of safe allocations of events to venues (which is
+     *         zero if there are none)
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null) && events does not contain duplicate
+     *          events && venues does not contain duplicate venues.
+     */
+    public static BigInteger countAllocations(List<Event> events,
+            List<Venue> venues) {
+        AllocationProblem problem = AllocationProblem.compile(events, venues);
+        if (FeasibilityCheck.check(problem) != null) {
+            return BigInteger.ZERO;
         }
-        return result;
+        return new AllocationCounter(problem).count();
     }
 
     /**
-     * Returns the traffic caused by the given allocation.
+     * <p>
+     * Returns a safe allocation of the events in the given safe allocation and
+     * the given event to the given venues, if there is one, or null otherwise.
+     * </p>
+     * 
+     * <p>
+     * The given allocation is repaired rather than solved again: the event is
+     * placed at a free venue if it can be, and otherwise a small number of the
+     * allocated events are moved to make room for it (see AllocationRepair).
+     * Only if that fails are all of the events allocated again from scratch,
+     * so the result may then differ from the given allocation in any way.
+     * </p>
+     * 
+     * @param allocation
+     *            a safe allocation of events to venues in the list venues
+     * @param event
+     *            the event to be added
+     * @param venues
+     *            the venues to allocate events to
+     * @return a safe allocation of the allocated events and event, or null if
+     *         there is none
+     * @throws NullPointerException
+     *             if allocation, event or venues is null
+     * @throws IllegalArgumentException
+     *             if event is already allocated
+     * @require !venues.contains(null) && venues does not contain duplicate
+     *          venues && allocation is a safe allocation of events to venues
+     *          in the list venues
+     * @ensure The given allocation and list are not modified.
+     */
+    public static Map<Event, Venue> addEvent(Map<Event, Venue> allocation,
+            Event event, List<Venue> venues) {
+        if (allocation == null || event == null || venues == null) {
+            throw new NullPointerException(
+                    "The allocation, event and venues cannot be null.");
+        }
+        if (allocation.containsKey(event)) {
+            throw new IllegalArgumentException(
+                    "The event is already allocated.");
+        }
+        return new AllocationRepair(allocation, venues).add(event);
+    }
+
+    /**
+     * Returns the given safe allocation without the given event, which is
+     * still safe, since removing an event only removes traffic.
      * 
-     * @requires allocation!=null && the keys in allocation are not null and
-     *           each event in keySet of allocation maps to a non-null venue
-     *           that can host that event.
-     * @ensures returns the traffic caused by the given allocation.
+     * @param allocation
+     *            a safe allocation of events to venues
+     * @param event
+     *            the event to be removed
+     * @return a safe allocation of the other events to the same venues as in
+     *         allocation
+     * @throws NullPointerException
+     *             if allocation or event is null
+     * @throws IllegalArgumentException
+     *             if event is not allocated
+     * @ensure The given allocation is not modified.
      */
-    private static Traffic getUsageOf(Map<Event, Venue> allocation) {
-        Traffic result = new Traffic();
-        for (Event event : allocation.keySet()) {
-            Venue venue = allocation.get(event);
-            result.addTraffic(venue.getTraffic(event));
+    public static Map<Event, Venue> removeEvent(Map<Event, Venue> allocation,
+            Event event) {
+        if (allocation == null || event == null) {
+            throw new NullPointerException(
+                    "The allocation and event cannot be null.");
         }
+        if (!allocation.containsKey(event)) {
+            throw new IllegalArgumentException("The event is not allocated.");
+        }
+        Map<Event, Venue> result = new HashMap<>(allocation);
+        result.remove(event);
         return result;
     }
 
     /**
-     * Returns true if the traffic caused by the given allocation is safe, and
-     * false otherwise.
+     * <p>
+     * Returns a safe allocation of the events in the given safe allocation to
+     * the given venues without the withdrawn venue, if there is one, or null
+     * otherwise.
+     * </p>
+     * 
+     * <p>
+     * The event at the withdrawn venue, if there is one, is removed and then
+     * added back as by addEvent, so the other events stay where they are
+     * unless they have to move to make room for it.
+     * </p>
      * 
-     * @requires allocation!=null && the keys in allocation are not null and
-     *           each event in keySet of allocation maps to a non-null venue
-     *           that can host that event.
-     * @ensures returns whether or not the traffic in the given allocation is
-     *          safe.
+     * @param allocation
+     *            a safe allocation of events to venues in the list venues
+     * @param venue
+     *            the venue to be withdrawn
+     * @param venues
+     *            the venues to allocate events to, with or without the
+     *            withdrawn venue
+     * @return a safe allocation of the allocated events to the venues other
+     *         than venue, or null if there is none
+     * @throws NullPointerException
+     *             if allocation, venue or venues is null
+     * @require !venues.contains(null) && venues does not contain duplicate
+     *          venues && allocation is a safe allocation of events to venues
+     *          in the list venues
+     * @ensure The given allocation and list are not modified.
      */
-    private static boolean safeTraffic(Map<Event, Venue> allocation) {
-        Traffic traffic = getUsageOf(allocation);
-        return traffic.isSafe();
+    public static Map<Event, Venue> withdrawVenue(Map<Event, Venue> allocation,
+            Venue venue, List<Venue> venues) {
+        if (allocation == null || venue == null || venues == null) {
+            throw new NullPointerException(
+                    "The allocation, venue and venues cannot be null.");
+        }
+        List<Venue> remaining = new ArrayList<>(venues);
+        remaining.remove(venue);
+        Map<Event, Venue> result = new HashMap<>(allocation);
+        Event displaced = null; // the event at the withdrawn venue, if any
+        for (Map.Entry<Event, Venue> entry : allocation.entrySet()) {
+            if (entry.getValue().equals(venue)) {
+                displaced = entry.getKey();
+                result.remove(displaced);
+            }
+        }
+        if (displaced == null) {
+            return result;
+        }
+        return new AllocationRepair(result, remaining).add(displaced);
     }
 
 }
@@ -0,0 +1,105 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable allocation of some of the events to venues, found by the
+ * local-search allocator, that may not be safe.
+ * </p>
+ *
+ * <p>
+ * Each allocated event is at a venue that can host it, and no two allocated
+ * events are at the same venue, but the traffic may exceed the capacity of
+ * some corridors, and some events may be left unallocated. The overload is
+ * the total, over all corridors, of the traffic in excess of the capacity of
+ * the corridor.
+ * </p>
+ */
+public class ApproximateAllocation {
+
+    // the allocated events and their venues
+    private final Map<Event, Venue> allocation;
+    // the events that are not allocated
+    private final List<Event> unallocated;
+    // the total traffic over capacity on all corridors
+    private final long overload;
+    // the number of moves the search had made
+    private final long iterations;
+
+    /*
+     * invariant: allocation != null && unallocated != null && overload >= 0
+     * && iterations >= 0
+     */
+
+    /**
+     * Creates a new approximate allocation.
+     *
+     * @require allocation != null && unallocated != null && overload >= 0 &&
+     *          iterations >= 0 && overload is the overload of allocation
+     */
+    ApproximateAllocation(Map<Event, Venue> allocation,
+            List<Event> unallocated, long overload, long iterations) {
+        this.allocation = Collections.unmodifiableMap(allocation);
+        this.unallocated = Collections.unmodifiableList(unallocated);
+        this.overload = overload;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Returns the allocated events and the venues they are allocated to.
+     *
+     * @return an unmodifiable map from each allocated event to its venue
+     */
+    public Map<Event, Venue> getAllocation() {
+        return allocation;
+    }
+
+    /**
+     * Returns the events that are not allocated.
+     *
+     * @return an unmodifiable list of the unallocated events
+     */
+    public List<Event> getUnallocated() {
+        return unallocated;
+    }
+
+    /**
+     * Returns the total, over all corridors, of the traffic in excess of the
+     * capacity of the corridor.
+     *
+     * @return the overload, which is zero if the allocation is safe
+     */
+    public long getOverload() {
+        return overload;
+    }
+
+    /**
+     * Returns true if no corridor carries more traffic than its capacity.
+     *
+     * @return whether the overload is zero
+     */
+    public boolean isSafe() {
+        return overload == 0;
+    }
+
+    /**
+     * Returns true if every event is allocated.
+     *
+     * @return whether there are no unallocated events
+     */
+    public boolean isComplete() {
+        return unallocated.isEmpty();
+    }
+
+    /**
+     * Returns the number of moves the search had made when this allocation
+     * was reported.
+     *
+     * @return the number of moves
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+}
@@ -0,0 +1,258 @@
+package planner;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/**
+ * <p>
+ * An allocator that solves many scenarios (lists of events) against the same
+ * venues at once, each on its own task.
+ * </p>
+ * 
+ * <p>
+ * The venues are compiled once, when the allocator is created, and the
+ * compiled venues are shared, read-only, by the search of every scenario, so
+ * each scenario only pays for compiling its own events. Results are returned
+ * as a stream in the order the scenarios finish, not the order they were
+ * given, so a caller can act on the easy scenarios while the hard ones are
+ * still running; each result carries the index of its scenario and the time
+ * it took to solve.
+ * </p>
+ * 
+ * <p>
+ * The scenarios run on the executor given to setExecutor. By default each
+ * batch runs on a new executor that starts a virtual thread per scenario,
+ * where the Java runtime provides them, or otherwise on a pool with one
+ * thread per available processor. An executor the allocator creates is shut
+ * down once the batch has finished; one given to it is left running.
+ * </p>
+ * 
+ * <p>
+ * The settings of an allocator are read when allocateAll is called. An
+ * allocator is not safe to configure from more than one thread at a time, but
+ * the batches it has started do not share any mutable state with it.
+ * </p>
+ */
+public class BatchAllocator {
+
+    // the compiled venues shared by every scenario
+    private final VenueModel model;
+    // the executor to run scenarios on, or null to create one per batch
+    private Executor executor;
+    // the options that control the search of each scenario
+    private SearchOptions options;
+
+    /*
+     * invariant: model != null && options != null
+     */
+
+    /**
+     * Creates a new batch allocator for the given venues, with the default
+     * search options and executor.
+     * 
+     * @param venues
+     *            the venues to allocate events to
+     * @throws NullPointerException
+     *             if venues is null
+     * @require !venues.contains(null) && venues does not contain duplicate
+     *          venues
+     * @ensure The given list is not modified, and later changes to it do not
+     *         affect the allocator.
+     */
+    public BatchAllocator(List<Venue> venues) {
+        if (venues == null) {
+            throw new NullPointerException("The venues cannot be null.");
+        }
+        model = VenueModel.compile(venues);
+        executor = null;
+        options = new SearchOptions();
+    }
+
+    /**
+     * Sets the executor that runs the scenarios of each batch, or null if
+     * each batch should create (and shut down) its own.
+     * 
+     * @param executor
+     *            the executor, or null for the default
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the options that control the search of each scenario. The options
+     * are copied when a batch starts, so changing them afterwards does not
+     * affect a running batch.
+     * 
+     * @param options
+     *            the search options
+     * @throws NullPointerException
+     *             if options is null
+     */
+    public void setOptions(SearchOptions options) {
+        if (options == null) {
+            throw new NullPointerException("The options cannot be null.");
+        }
+        this.options = options;
+    }
+
+    /**
+     * <p>
+     * Starts solving each of the given scenarios, and returns a stream of
+     * their results in the order in which they finish.
+     * </p>
+     * 
+     * <p>
+     * Every scenario is submitted before this method returns. Taking the next
+     * element of the stream waits until another scenario has finished. If the
+     * search of a scenario throws an exception, taking its result rethrows it.
+     * Closing the stream cancels the scenarios that have not yet started. If
+     * the thread taking the results is interrupted while it waits, the stream
+     * throws an IllegalStateException, with the interrupt status of the
+     * thread left set.
+     * </p>
+     * 
+     * @param scenarios
+     *            the scenarios, each a list of events to be allocated to the
+     *            venues
+     * @return a stream of the results of the scenarios, as they finish
+     * @throws NullPointerException
+     *             if scenarios is null or contains null
+     * @require each scenario does not contain null or duplicate events
+     * @ensure The given lists are not modified.
+     */
+    public Stream<ScenarioResult> allocateAll(
+            Collection<? extends List<Event>> scenarios) {
+        if (scenarios == null) {
+            throw new NullPointerException("The scenarios cannot be null.");
+        }
+        List<List<Event>> copies = new ArrayList<>(scenarios.size());
+        for (List<Event> events : scenarios) {
+            if (events == null) {
+                throw new NullPointerException(
+                        "The scenarios cannot contain null.");
+            }
+            copies.add(new ArrayList<>(events));
+        }
+        SearchOptions batchOptions = new SearchOptions(options);
+
+        ExecutorService owned = (executor == null ? newExecutor() : null);
+        CompletionService<ScenarioResult> completion =
+                new ExecutorCompletionService<>(owned == null ? executor
+                        : owned);
+        List<Future<ScenarioResult>> futures = new ArrayList<>(copies.size());
+        try {
+            for (int i = 0; i < copies.size(); i++) {
+                int index = i; // the index of the scenario submitted
+                futures.add(completion.submit(() -> solve(index, copies.get(
+                        index), batchOptions)));
+            }
+        } catch (RuntimeException e) {
+            cancel(futures);
+            throw e;
+        } finally {
+            if (owned != null) {
+                // lets the submitted scenarios finish, then ends the threads
+                owned.shutdown();
+            }
+        }
+
+        Iterator<ScenarioResult> results = new Iterator<ScenarioResult>() {
+            // the number of results taken so far
+            private int taken = 0;
+
+            @Override
+            public boolean hasNext() {
+                return taken < futures.size();
+            }
+
+            @Override
+            public ScenarioResult next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                taken++;
+                try {
+                    return completion.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(
+                            "Interrupted while waiting for a scenario.", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        };
+        // not SIZED, so that count() waits for every scenario to finish
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                results, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> cancel(futures));
+    }
+
+    /**
+     * Solves one scenario against the shared venues.
+     * 
+     * @require index >= 0 && events != null && options != null
+     * @ensure Returns the result of the scenario. Neither the events nor the
+     *         options are modified.
+     */
+    private ScenarioResult solve(int index, List<Event> events,
+            SearchOptions options) {
+        long start = System.nanoTime();
+        SearchStatistics statistics = new SearchStatistics();
+        AllocationProblem problem = AllocationProblem.compile(events, model,
+                options.getEventOrder(), new Traffic());
+        // the assignment found, or null if there is none
+        int[] assignment = Allocator.first(problem, options, statistics, null,
+                null);
+        Map<Event, Venue> allocation = (assignment == null ? null : problem
+                .toAllocation(assignment));
+        return new ScenarioResult(index, events, allocation, System.nanoTime()
+                - start, statistics);
+    }
+
+    /**
+     * Cancels those of the given scenarios that have not yet finished.
+     * 
+     * @require futures != null
+     */
+    private static void cancel(List<Future<ScenarioResult>> futures) {
+        for (Future<ScenarioResult> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Returns a new executor that starts a virtual thread per task, if the
+     * Java runtime provides virtual threads, or otherwise a new pool with one
+     * daemon thread per available processor.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            // looked up reflectively, so that the class also runs on
+            // runtimes without virtual threads (an exception thrown by the
+            // factory itself arrives wrapped in an InvocationTargetException)
+            Method factory = Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime()
+                    .availableProcessors(), runnable -> {
+                        Thread thread = new Thread(runnable,
+                                "batch-allocator");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+}
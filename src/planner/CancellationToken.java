@@ -0,0 +1,43 @@
+package planner;
+
+/**
+ * <p>
+ * A flag that asks the solvers it is given to to stop.
+ * </p>
+ * 
+ * <p>
+ * A token may be cancelled from any thread. Cancellation is cooperative: a
+ * solver polls its token as it searches, so it stops a short while after the
+ * token is cancelled rather than at once. Once cancelled, a token stays
+ * cancelled, and a solver given a cancelled token stops straight away.
+ * </p>
+ */
+public class CancellationToken {
+
+    // true once the token has been cancelled
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new token that has not been cancelled.
+     */
+    public CancellationToken() {
+        cancelled = false;
+    }
+
+    /**
+     * Cancels this token, asking every solver that polls it to stop.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if this token has been cancelled, and false otherwise.
+     * 
+     * @return whether this token has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+}
@@ -20,12 +20,18 @@ public class Corridor implements Comparable<Corridor> {
     private Location end;
     // the maximum capacity of the corridor -- integer units represent people
     private int capacity;
+    // the hash code of the corridor, computed once
+    private int hash;
+    // the id of the corridor in the registry, or -1 if it has not been looked
+    // up yet (set at most once, to the same value by any thread that sets it)
+    private int id;
 
     /*
      * invariant:
      * 
      * name!= null && start!= null && end!=null && !start.equals(end) &&
-     * capacity > 0
+     * capacity > 0 && hash == the polynomial hash of start, end and capacity
+     * && (id == -1 || id == Registry.corridorId(this))
      */
 
     /**
@@ -62,6 +68,14 @@ public class Corridor implements Comparable<Corridor> {
         this.start = start;
         this.end = end;
         this.capacity = capacity;
+        // We create a polynomial hash-code based on start, end and capacity.
+        final int prime = 31; // an odd base prime
+        int result = 1; // the hash code under construction
+        result = prime * result + start.hashCode();
+        result = prime * result + end.hashCode();
+        result = prime * result + capacity;
+        this.hash = result;
+        this.id = -1;
     }
 
     /**
@@ -91,6 +105,21 @@ public class Corridor implements Comparable<Corridor> {
         return capacity;
     }
 
+    /**
+     * Returns the id of this corridor in the registry, looking it up (and
+     * registering the corridor if need be) the first time it is asked for.
+     *
+     * @ensure Returns Registry.corridorId(this).
+     */
+    int getId() {
+        int result = id; // read once, since another thread may set it
+        if (result < 0) {
+            result = Registry.corridorId(this);
+            id = result;
+        }
+        return result;
+    }
+
     /**
      * <p>
      * This method returns a string of the form: <br>
@@ -127,23 +156,24 @@ public class Corridor implements Comparable<Corridor> {
      */
     @Override
     public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
         if (!(object instanceof Corridor)) {
             return false;
         }
         Corridor other = (Corridor) object; // the corridor to compare
-        return start.equals(other.start) && end.equals(other.end)
-                && capacity == other.capacity;
+        if (id >= 0 && other.id >= 0) {
+            // corridors that have been looked up are equal if their ids are
+            return id == other.id;
+        }
+        return hash == other.hash && start.equals(other.start)
+                && end.equals(other.end) && capacity == other.capacity;
     }
 
     @Override
     public int hashCode() {
-        // We create a polynomial hash-code based on start, end and capacity.
-        final int prime = 31; // an odd base prime
-        int result = 1; // the hash code under construction
-        result = prime * result + start.hashCode();
-        result = prime * result + end.hashCode();
-        result = prime * result + capacity;
-        return result;
+        return hash;
     }
 
     /**
@@ -171,6 +201,9 @@ public class Corridor implements Comparable<Corridor> {
      */
     @Override
     public int compareTo(Corridor other) {
+        if (this == other) {
+            return 0;
+        }
         int result = start.compareTo(other.start);
         if (result == 0) {
             result = end.compareTo(other.end);
@@ -194,8 +227,17 @@ public class Corridor implements Comparable<Corridor> {
      * @return true if this class is internally consistent, and false otherwise.
      */
     public boolean checkInvariant() {
-        return (start != null && end != null && !start.equals(end)
-                && capacity > 0);
+        if (start == null || end == null || start.equals(end)
+                || capacity <= 0) {
+            return false;
+        }
+        final int prime = 31; // an odd base prime
+        int result = 1; // the hash code expected
+        result = prime * result + start.hashCode();
+        result = prime * result + end.hashCode();
+        result = prime * result + capacity;
+        return hash == result && (id == -1 || Registry.corridor(id)
+                .compareTo(this) == 0);
     }
 
 }
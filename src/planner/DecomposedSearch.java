@@ -0,0 +1,672 @@
+package planner;
+
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>
+ * A search for a safe allocation of the events of a compiled allocation
+ * problem that splits the venues into components that share no corridors,
+ * and searches each component separately.
+ * </p>
+ *
+ * <p>
+ * Two venues are in the same component if they are linked by a chain of
+ * venues, each sharing a corridor with the next (venues with no corridors at
+ * all are put in one component of their own). Events at venues of different
+ * components never load the same corridor, so the components only interact
+ * through which events each of them is given. Whether a component can safely
+ * host a set of events depends only on the sizes of the events, since events
+ * of the same size are interchangeable.
+ * </p>
+ *
+ * <p>
+ * The search therefore assigns events to components, largest first, and each
+ * time an event is added to a component checks that the component can still
+ * host its events, by running an AllocationSearch on the component alone.
+ * The result of each such check is remembered under the component and the
+ * sizes of its events, so it is never repeated. Before searching, the check
+ * tries to add the new event to the allocation found for the component's
+ * other events, at the first free venue where it fits, which settles most
+ * checks on problems that are not tight. Adding an event to a
+ * component only makes it harder to host its events, so an assignment that
+ * fails the check is never extended. Events of the same size are assigned to
+ * components in increasing order of component, and an event is not added to a
+ * component if an earlier component with the same venues has the same events,
+ * so that interchangeable assignments are only searched once.
+ * </p>
+ *
+ * <p>
+ * On tight problems, each assignment is also checked against a bound across
+ * the components: by Hall's theorem, the events still to be assigned cannot
+ * be shared out if, for some size, the components together can take fewer of
+ * the remaining events of at least that size than there are (see
+ * canAssignRest). This cuts off assignments that leave too little room for
+ * the smaller events long before the smaller events are reached.
+ * </p>
+ *
+ * <p>
+ * When the venues form many small components, this replaces one search over
+ * every combination of venues with a search over which component hosts each
+ * event, and many small searches that are each done once.
+ * </p>
+ *
+ * <p>
+ * A search may be given a cancellation condition, which is polled by the
+ * search of each component and every CHECK_INTERVAL assignments of an event
+ * to a component; once it holds, the search unwinds without a result.
+ * </p>
+ */
+class DecomposedSearch {
+
+    // the number of assignments between polls of the cancellation condition
+    private final static int CHECK_INTERVAL = 1024;
+    // the result remembered for a set of sizes a component cannot host
+    private final static int[] FAILED = new int[0];
+
+    // the problem being searched
+    private final AllocationProblem problem;
+    // the options that control the search of each component
+    private final SearchOptions options;
+    // the record to add the work done by the search to
+    private final SearchStatistics statistics;
+
+    // the venue ids of each component, ascending
+    private final int[][] componentVenues;
+    // the compiled venues of each component, built when first needed
+    private final VenueModel[] models;
+    // the capacities of the venues of each component, in descending order
+    private final int[][] capacities;
+    // for each component, the closest component before it with the same
+    // venues, or -1 if there is none
+    private final int[] previousEquivalent;
+    // the event ids, in the order they are assigned to components
+    private final int[] order;
+    // for each position in order, the last position of an event of the same
+    // size
+    private final int[] lastOfSize;
+    // for each component and each position in order, the number of venues
+    // of the component that can host the event at that position
+    private final int[][] hostCounts;
+
+    // for each component, the sizes of the events assigned to it, which are
+    // in non-increasing order
+    private final List<List<Integer>> sizes;
+    // for each component, the positions in order of the events assigned to
+    // it
+    private final List<List<Integer>> members;
+    // the component of the event at each position in order
+    private final int[] componentOf;
+    // for each component, the result of checking each set of sizes: the
+    // local venue of each event, in the order of the sizes, or FAILED
+    private final List<Map<List<Integer>, int[]>> results;
+    // the condition under which the search should stop early, or null for
+    // none
+    private BooleanSupplier cancelled;
+    // the number of assignments made until the next poll of cancelled
+    private int untilCheck;
+    // true if the search has been stopped by the cancellation condition
+    private boolean stopped;
+    // the number of times a component has been found unable to host its
+    // events, which once it reaches the number of events turns on the
+    // counting bound of canAssignRest
+    private int failures;
+    // the position in order of the event being assigned
+    private int depth;
+    // the traffic on each corridor, used while extending an allocation of a
+    // component and otherwise all zero
+    private final int[] load;
+
+    /*
+     * invariant:
+     *
+     * the components partition the venue ids, and no corridor is used by
+     * venues of two components &&
+     *
+     * order holds each event id once, in non-increasing order of size &&
+     *
+     * sizes.get(k).get(j) is the size of the event at position
+     * members.get(k).get(j) of order &&
+     *
+     * each result in results.get(k) other than FAILED assigns the events of
+     * those sizes to distinct venues of the component, safely
+     */
+
+    /**
+     * Creates a new decomposed search of the given problem, whose components
+     * are searched as set out by the given options, adding the work done to
+     * the given statistics.
+     *
+     * @require problem != null && options != null && statistics != null &&
+     *          problem was compiled without background traffic
+     */
+    DecomposedSearch(AllocationProblem problem, SearchOptions options,
+            SearchStatistics statistics) {
+        this.problem = problem;
+        this.options = options;
+        this.statistics = statistics;
+
+        componentVenues = components(problem);
+        models = new VenueModel[componentVenues.length];
+        capacities = new int[componentVenues.length][];
+        previousEquivalent = new int[componentVenues.length];
+        // the number of components with each number of venues (only
+        // components of the same size can have the same venues)
+        Map<Integer, Integer> sizeCounts = new HashMap<>();
+        for (int[] venues : componentVenues) {
+            sizeCounts.merge(venues.length, 1, Integer::sum);
+        }
+        // the last component seen with each fingerprint
+        Map<ProblemFingerprint, Integer> lastEquivalent = new HashMap<>();
+        for (int k = 0; k < componentVenues.length; k++) {
+            int[] venues = componentVenues[k];
+            capacities[k] = new int[venues.length];
+            for (int i = 0; i < venues.length; i++) {
+                // negated so that sorting gives descending order
+                capacities[k][i] = -problem.getVenueCapacity(venues[i]);
+            }
+            Arrays.sort(capacities[k]);
+            for (int i = 0; i < venues.length; i++) {
+                capacities[k][i] = -capacities[k][i];
+            }
+            previousEquivalent[k] = -1;
+            if (sizeCounts.get(venues.length) > 1) {
+                Integer previous = lastEquivalent.put(new ProblemFingerprint(
+                        Collections.<Event> emptyList(), venueList(k)), k);
+                previousEquivalent[k] = (previous == null ? -1 : previous);
+            }
+        }
+
+        Integer[] sorted = new Integer[problem.eventCount()];
+        for (int e = 0; e < sorted.length; e++) {
+            sorted[e] = e;
+        }
+        Arrays.sort(sorted, (a, b) -> Integer.compare(problem.getEventSize(b),
+                problem.getEventSize(a)));
+        order = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            order[i] = sorted[i];
+        }
+        lastOfSize = new int[order.length];
+        for (int i = order.length - 1; i >= 0; i--) {
+            lastOfSize[i] = (i + 1 < order.length && problem.getEventSize(
+                    order[i + 1]) == problem.getEventSize(order[i])
+                            ? lastOfSize[i + 1] : i);
+        }
+        hostCounts = new int[componentVenues.length][order.length];
+        for (int k = 0; k < componentVenues.length; k++) {
+            for (int i = 0; i < order.length; i++) {
+                hostCounts[k][i] = hosts(k, problem.getEventSize(order[i]));
+            }
+        }
+
+        sizes = new ArrayList<>();
+        members = new ArrayList<>();
+        results = new ArrayList<>();
+        for (int k = 0; k < componentVenues.length; k++) {
+            sizes.add(new ArrayList<>());
+            members.add(new ArrayList<>());
+            results.add(new HashMap<>());
+        }
+        componentOf = new int[order.length];
+        load = new int[problem.corridorCount()];
+    }
+
+    /**
+     * Returns the number of components of the venues. Decomposing the search
+     * only helps if there are at least two.
+     */
+    int componentCount() {
+        return componentVenues.length;
+    }
+
+    /**
+     * Sets the condition under which the search should stop early. The
+     * condition is polled periodically rather than at every assignment.
+     *
+     * @require cancelled != null
+     */
+    void setCancellation(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Returns the number of events assigned to components above the
+     * assignment the search made last.
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns true if the search was stopped by the cancellation condition,
+     * and false otherwise.
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns a safe allocation, as an array holding the venue id assigned to
+     * each event id, or null if there is no safe allocation or the search was
+     * stopped.
+     *
+     * @ensure Returns a safe assignment, or null if there is none or
+     *         isStopped().
+     */
+    int[] first() {
+        stopped = false;
+        failures = 0;
+        untilCheck = CHECK_INTERVAL;
+        if (!assign(0)) {
+            return null;
+        }
+        int[] assignment = new int[problem.eventCount()];
+        for (int k = 0; k < componentVenues.length; k++) {
+            if (members.get(k).isEmpty()) {
+                continue;
+            }
+            int[] local = results.get(k).get(sizes.get(k));
+            for (int j = 0; j < local.length; j++) {
+                assignment[order[members.get(k).get(j)]] =
+                        componentVenues[k][local[j]];
+            }
+        }
+        return assignment;
+    }
+
+    /**
+     * Assigns the events from the given position of order onwards to
+     * components, given the assignment of the events before it.
+     *
+     * @require 0 <= position <= order.length && each component can host the
+     *          events assigned to it
+     * @ensure Returns true, with every event assigned, if the events from
+     *         the position onwards can be assigned so that each component can
+     *         host its events, and false, with the assignment as it was,
+     *         otherwise or if the search is stopped.
+     */
+    private boolean assign(int position) {
+        if (position == order.length) {
+            return true;
+        }
+        depth = position;
+        if (cancelled != null && --untilCheck == 0) {
+            untilCheck = CHECK_INTERVAL;
+            stopped = cancelled.getAsBoolean();
+        }
+        if (stopped) {
+            return false;
+        }
+        int size = problem.getEventSize(order[position]);
+        // the first component the event may go to
+        int start = (position > 0 && problem.getEventSize(order[position
+                - 1]) == size ? componentOf[position - 1] : 0);
+        for (int k = start; k < componentVenues.length; k++) {
+            List<Integer> current = sizes.get(k);
+            if (hosts(k, size) <= current.size() || repeats(k)) {
+                continue;
+            }
+            current.add(size);
+            members.get(k).add(position);
+            componentOf[position] = k;
+            if (!canHost(k)) {
+                failures++;
+            } else if ((failures < order.length || canAssignRest(position + 1))
+                    && assign(position + 1)) {
+                return true;
+            }
+            current.remove(current.size() - 1);
+            members.get(k).remove(members.get(k).size() - 1);
+            if (stopped) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns false if the events from the given position of order onwards
+     * cannot be shared out among the components so that each can host its
+     * share, judged by counting, and true otherwise.
+     *
+     * <p>
+     * For each size, take the remaining events of at least that size. A
+     * component can host its events together with m of them only if it can
+     * host them together with the m smallest of them, since each of the m is
+     * at least as large as one of those. The greatest such m bounds the
+     * number of these events that the component can take, and by Hall's
+     * theorem the events cannot be shared out if these bounds add up, over
+     * all of the components, to fewer than the number of events. The sizes
+     * are taken largest first, and a component's bound only grows as the
+     * size falls, so each bound carries over to the next size. The bounds
+     * are only raised until they cover the events, which keeps the searches
+     * of the components this needs to a minimum when there is room. The
+     * bound is only checked once components have been found unable to host
+     * their events as many times as there are events, so problems that are
+     * not tight never pay for it.
+     * </p>
+     *
+     * @require 0 <= position <= order.length
+     * @ensure Returns false if the search was stopped.
+     */
+    private boolean canAssignRest(int position) {
+        // for each component, the bound for the sizes taken so far
+        int[] rooms = new int[componentVenues.length];
+        for (int i = position; i < order.length; i = lastOfSize[i] + 1) {
+            int last = lastOfSize[i]; // the smallest event of the size
+            int needed = last - position + 1; // the events of the size or more
+            int total = 0; // the sum of the bounds for this size
+            for (int room : rooms) {
+                total += room;
+            }
+            // raise the bounds only until they cover the events
+            for (int k = 0; k < rooms.length && total < needed; k++) {
+                int limit = hostCounts[k][last] - sizes.get(k).size();
+                while (rooms[k] < limit && total < needed && canHostSmallest(
+                        k, last, rooms[k] + 1)) {
+                    rooms[k]++;
+                    total++;
+                }
+                if (stopped) {
+                    return false;
+                }
+            }
+            if (total < needed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given component can safely host its events together
+     * with the given number of events of order ending at the given position.
+     *
+     * @require count > 0 && the events of order in (last - count, last] are
+     *           not assigned to a component
+     * @ensure The events of the component are as they were on entry. Returns
+     *         false if the search was stopped.
+     */
+    private boolean canHostSmallest(int component, int last, int count) {
+        List<Integer> current = sizes.get(component);
+        List<Integer> positions = members.get(component);
+        int assigned = current.size(); // the events assigned to it
+        for (int i = last - count + 1; i <= last; i++) {
+            current.add(problem.getEventSize(order[i]));
+            positions.add(i);
+        }
+        boolean hosted = canHost(component);
+        current.subList(assigned, current.size()).clear();
+        positions.subList(assigned, positions.size()).clear();
+        return hosted;
+    }
+
+    /**
+     * Returns the number of venues of the given component that can host an
+     * event of the given size.
+     */
+    private int hosts(int component, int size) {
+        int[] descending = capacities[component];
+        int count = 0;
+        while (count < descending.length && descending[count] >= size) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if an earlier component with the same venues as the given
+     * one has the same events, so that adding an event to the given one
+     * repeats an assignment that has been searched already.
+     */
+    private boolean repeats(int component) {
+        for (int k = previousEquivalent[component]; k != -1;
+                k = previousEquivalent[k]) {
+            if (sizes.get(k).equals(sizes.get(component))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the given component can safely host the events assigned
+     * to it, searching the component if the answer is not already known.
+     *
+     * @ensure The result for the sizes of the events of the component is
+     *         remembered, unless the search of the component was stopped, in
+     *         which case false is returned.
+     */
+    private boolean canHost(int component) {
+        Map<List<Integer>, int[]> known = results.get(component);
+        int[] result = known.get(sizes.get(component));
+        if (result == null) {
+            result = extendKnown(component);
+            if (result == null) {
+                result = search(component);
+            }
+            if (result == null) {
+                return false;
+            }
+            known.put(new ArrayList<>(sizes.get(component)), result);
+        }
+        return result != FAILED;
+    }
+
+    /**
+     * Tries to extend the allocation found for all but the last event of the
+     * given component, by placing the last event at the first free venue of
+     * the component where it fits.
+     *
+     * @require the component has at least one event
+     * @ensure Returns the local venue of each event of the component, in the
+     *         order of its members, or null if there is no known allocation
+     *         of the other events or the last event fits at none of the free
+     *         venues. The load is left all zero.
+     */
+    private int[] extendKnown(int component) {
+        List<Integer> positions = members.get(component);
+        int count = positions.size(); // the number of events, with the last
+        int[] previous = (count == 1 ? new int[0] : results.get(component)
+                .get(sizes.get(component).subList(0, count - 1)));
+        if (previous == null || previous == FAILED) {
+            return null;
+        }
+        int[] venues = componentVenues[component];
+        boolean[] taken = new boolean[venues.length];
+        for (int j = 0; j < previous.length; j++) {
+            taken[previous[j]] = true;
+            addLoad(order[positions.get(j)], venues[previous[j]], 1);
+        }
+        int event = order[positions.get(count - 1)]; // the event to place
+        int found = -1; // the local venue found for it, if any
+        for (int local = 0; local < venues.length && found == -1; local++) {
+            if (!taken[local] && problem.canHost(venues[local], event)
+                    && fits(event, venues[local])) {
+                found = local;
+            }
+        }
+        for (int j = 0; j < previous.length; j++) {
+            addLoad(order[positions.get(j)], venues[previous[j]], -1);
+        }
+        if (found == -1) {
+            return null;
+        }
+        int[] result = Arrays.copyOf(previous, count);
+        result[count - 1] = found;
+        return result;
+    }
+
+    /**
+     * Adds (sign 1) or removes (sign -1) the traffic of the given event at the
+     * given venue to or from the load.
+     *
+     * @require problem.canHost(venue, event)
+     */
+    private void addLoad(int event, int venue, int sign) {
+        int[] corridors = problem.getVenueCorridors(venue);
+        for (int k = 0; k < corridors.length; k++) {
+            load[corridors[k]] += sign * problem.getTraffic(venue, event, k);
+        }
+    }
+
+    /**
+     * Returns true if placing the given event at the given venue would leave
+     * every corridor of the venue within its capacity under the load.
+     *
+     * @require problem.canHost(venue, event)
+     */
+    private boolean fits(int event, int venue) {
+        int[] corridors = problem.getVenueCorridors(venue);
+        for (int k = 0; k < corridors.length; k++) {
+            if (load[corridors[k]] + problem.getTraffic(venue, event,
+                    k) > problem.getCorridorCapacity(corridors[k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches for a safe allocation of the events assigned to the given
+     * component to its venues.
+     *
+     * @ensure Returns the local venue of each event of the component, in the
+     *         order of its members, FAILED if there is no safe allocation, or
+     *         null if the search was stopped.
+     */
+    private int[] search(int component) {
+        if (models[component] == null) {
+            models[component] = VenueModel.compile(venueList(component));
+        }
+        List<Integer> positions = members.get(component);
+        List<Event> events = new ArrayList<>(positions.size());
+        // the index in events of each event
+        Map<Event, Integer> index = new IdentityHashMap<>();
+        for (int position : positions) {
+            Event event = problem.getEvent(order[position]);
+            index.put(event, events.size());
+            events.add(event);
+        }
+
+        AllocationProblem part = AllocationProblem.compile(events,
+                models[component], options.getEventOrder(), new Traffic());
+        if (FeasibilityCheck.check(part) != null) {
+            return FAILED;
+        }
+        AllocationSearch search = new AllocationSearch(part);
+        search.configure(options);
+        search.setStatistics(statistics);
+        if (cancelled != null) {
+            search.setCancellation(cancelled);
+        }
+        int[] assignment = search.first();
+        if (search.isStopped()) {
+            stopped = true;
+            return null;
+        }
+        if (assignment == null) {
+            return FAILED;
+        }
+        int[] local = new int[events.size()];
+        for (int e = 0; e < assignment.length; e++) {
+            local[index.get(part.getEvent(e))] = assignment[e];
+        }
+        return local;
+    }
+
+    /**
+     * Returns the venues of the given component, in order of venue id.
+     */
+    private List<Venue> venueList(int component) {
+        List<Venue> venues = new ArrayList<>(componentVenues[component].length);
+        for (int venue : componentVenues[component]) {
+            venues.add(problem.getVenue(venue));
+        }
+        return venues;
+    }
+
+    /**
+     * Returns the venue ids of each component of the venues of the given
+     * problem, each in ascending order, with the components in order of their
+     * least venue id.
+     *
+     * @require problem != null
+     */
+    private static int[][] components(AllocationProblem problem) {
+        // the parent of each venue in a forest of the components
+        int[] parent = new int[problem.venueCount()];
+        for (int v = 0; v < parent.length; v++) {
+            parent[v] = v;
+        }
+        // the first venue seen using each corridor, or -1 if none has been
+        int[] first = new int[problem.corridorCount()];
+        Arrays.fill(first, -1);
+        int unused = -1; // the first venue seen that uses no corridors
+        for (int v = 0; v < parent.length; v++) {
+            int[] corridors = problem.getVenueCorridors(v);
+            if (corridors.length == 0) {
+                if (unused == -1) {
+                    unused = v;
+                } else {
+                    union(parent, unused, v);
+                }
+            }
+            for (int corridor : corridors) {
+                if (first[corridor] == -1) {
+                    first[corridor] = v;
+                } else {
+                    union(parent, first[corridor], v);
+                }
+            }
+        }
+
+        // the component number of each root, in order of first venue
+        Map<Integer, Integer> numbers = new HashMap<>();
+        List<List<Integer>> components = new ArrayList<>();
+        for (int v = 0; v < parent.length; v++) {
+            int root = find(parent, v);
+            Integer number = numbers.get(root);
+            if (number == null) {
+                number = components.size();
+                numbers.put(root, number);
+                components.add(new ArrayList<>());
+            }
+            components.get(number).add(v);
+        }
+        int[][] result = new int[components.size()][];
+        for (int k = 0; k < result.length; k++) {
+            List<Integer> component = components.get(k);
+            result[k] = new int[component.size()];
+            for (int i = 0; i < result[k].length; i++) {
+                result[k][i] = component.get(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the root of the tree holding the given venue, halving the path
+     * to it.
+     */
+    private static int find(int[] parent, int venue) {
+        while (parent[venue] != venue) {
+            parent[venue] = parent[parent[venue]];
+            venue = parent[venue];
+        }
+        return venue;
+    }
+
+    /**
+     * Joins the trees holding the two given venues.
+     */
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+}
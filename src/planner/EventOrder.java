@@ -0,0 +1,38 @@
+package planner;
+
+/**
+ * The order in which the allocation search allocates events to venues.
+ * 
+ * <p>
+ * Whatever the order, events of the same size are always allocated one after
+ * the other, since they are interchangeable.
+ * </p>
+ */
+public enum EventOrder {
+
+    /**
+     * Events are allocated in the order in which they are given.
+     */
+    INPUT,
+
+    /**
+     * Events are allocated in decreasing order of size.
+     */
+    LARGEST_FIRST,
+
+    /**
+     * Events are allocated in increasing order of the number of venues that
+     * can host them, so that the events with the fewest options are allocated
+     * first.
+     */
+    FEWEST_VENUES_FIRST,
+
+    /**
+     * Events are allocated in decreasing order of the least corridor load
+     * they can generate: the smallest, over the venues that can host the
+     * event, of the sum of the fractions of the capacity of each corridor that
+     * the event would use at that venue.
+     */
+    MOST_TRAFFIC_FIRST
+
+}
@@ -0,0 +1,104 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Provides polynomial-time checks that prove that a compiled allocation
+ * problem has no safe allocation, so that the search can be skipped.
+ * </p>
+ * 
+ * <p>
+ * The checks are necessary conditions only: if they all pass, there may still
+ * be no safe allocation, and the search decides.
+ * </p>
+ * 
+ * <p>
+ * Whether an event can be placed at a venue on its own depends only on its
+ * size, and if an event can be placed at a venue, so can every smaller event
+ * (it generates no more traffic on any corridor). The sets of venues at which
+ * the events can be placed are therefore nested, and Hall's condition only
+ * needs to be checked for the k largest events, for each k. For nested sets
+ * this condition is also sufficient, so it decides whether there is a
+ * matching of events to venues without running a general bipartite matching
+ * algorithm.
+ * </p>
+ */
+class FeasibilityCheck {
+
+    /**
+     * Returns a reason why the given problem has no safe allocation, if one
+     * of the checks finds one, or null if all of the checks pass.
+     * 
+     * @require problem != null
+     * @ensure Returns null, or a reason that proves that problem has no safe
+     *         allocation. The checks are run in the order NO_VENUE,
+     *         TOO_FEW_VENUES, CORRIDOR_OVERLOAD, and the first to fail is
+     *         returned.
+     */
+    static Infeasibility check(AllocationProblem problem) {
+        // the number of venues at which an event of each size can be placed
+        Map<Integer, Integer> usable = new HashMap<>();
+        for (int e = 0; e < problem.eventCount(); e++) {
+            int size = problem.getEventSize(e);
+            if (!usable.containsKey(size)) {
+                usable.put(size, usableVenues(problem, e));
+            }
+        }
+
+        for (int count : usable.values()) {
+            if (count == 0) {
+                return Infeasibility.NO_VENUE;
+            }
+        }
+
+        // the event sizes, largest first
+        Integer[] sizes = new Integer[problem.eventCount()];
+        for (int e = 0; e < problem.eventCount(); e++) {
+            sizes[e] = problem.getEventSize(e);
+        }
+        Arrays.sort(sizes, Collections.reverseOrder());
+        for (int k = 0; k < sizes.length; k++) {
+            // the k + 1 largest events can only use the venues of the smallest
+            if (usable.get(sizes[k]) < k + 1) {
+                return Infeasibility.TOO_FEW_VENUES;
+            }
+        }
+
+        int[] corridors = problem.getBoundCorridors(0);
+        for (int k = 0; k < corridors.length; k++) {
+            if (problem.getBoundTraffic(0, k) > problem.getCorridorCapacity(
+                    corridors[k])) {
+                return Infeasibility.CORRIDOR_OVERLOAD;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of venues at which the given event can be placed on
+     * its own: venues that can host it and at which its traffic alone does
+     * not overload a corridor.
+     * 
+     * @require problem != null && 0 <= event < problem.eventCount()
+     */
+    private static int usableVenues(AllocationProblem problem, int event) {
+        int count = 0; // the number of usable venues found so far
+        for (int venue = 0; venue < problem.venueCount(); venue++) {
+            if (!problem.canHost(venue, event)) {
+                continue;
+            }
+            boolean fits = true; // whether the event's traffic fits alone
+            int[] corridors = problem.getVenueCorridors(venue);
+            for (int k = 0; k < corridors.length && fits; k++) {
+                fits = problem.getTraffic(venue, event, k) <= problem
+                        .getCorridorCapacity(corridors[k]);
+            }
+            if (fits) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
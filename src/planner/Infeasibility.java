@@ -0,0 +1,29 @@
+package planner;
+
+/**
+ * A reason why there is no safe allocation of a list of events to a list of
+ * venues, found without searching for one.
+ */
+public enum Infeasibility {
+
+    /**
+     * Some event cannot be placed at any of the venues on its own: each venue
+     * is either too small to host it, or would overload a corridor with the
+     * traffic of that event alone.
+     */
+    NO_VENUE,
+
+    /**
+     * Some k of the events can, between them, only be placed (on their own) at
+     * fewer than k venues, so there is no way to give each of them a different
+     * venue (Hall's condition for a matching of events to venues fails).
+     */
+    TOO_FEW_VENUES,
+
+    /**
+     * The least traffic that the events must generate on some corridor,
+     * wherever they are placed, exceeds the capacity of that corridor.
+     */
+    CORRIDOR_OVERLOAD
+
+}
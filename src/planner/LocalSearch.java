@@ -0,0 +1,397 @@
+package planner;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * A simulated-annealing search for an allocation of the events of a compiled
+ * allocation problem to its venues that has little overload and leaves few
+ * events unallocated, for problems too large for the exact search.
+ * </p>
+ *
+ * <p>
+ * The cost of an allocation is its overload (the total traffic in excess of
+ * capacity, over all corridors) plus the unallocated weight times the total
+ * size of the unallocated events. Each move picks a random event and a random
+ * venue that can host it, and either moves the event there (if the venue is
+ * free), swaps it with the event there (if that event can be hosted at the
+ * first event's venue), or puts it there in place of the event there, which
+ * is left unallocated. Now and then an allocated event is left unallocated
+ * instead. A move that does not raise the cost is always kept, and a move
+ * that raises it by d is kept with probability exp(-d / T), where the
+ * temperature T falls geometrically over the budget of the search.
+ * </p>
+ *
+ * <p>
+ * The load on each corridor, and the overload, are updated as events move, so
+ * a move costs time in proportion to the number of corridors used by the two
+ * venues involved, however large the problem is.
+ * </p>
+ */
+class LocalSearch {
+
+    // the number of moves between checks of the clock
+    private final static int CHECK_INTERVAL = 1024;
+    // the least time between reports of progress
+    private final static long REPORT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(
+            50);
+    // one in this many moves of an allocated event leaves it unallocated
+    private final static int UNALLOCATE_ODDS = 16;
+    // the temperature at the end of the search
+    private final static double FINAL_TEMPERATURE = 0.05;
+
+    // the problem being searched
+    private final AllocationProblem problem;
+    // the random number generator choosing the moves
+    private final Random random;
+    // the value of System.nanoTime() when the time budget started
+    private final long start;
+    // the time budget in nanoseconds, or Long.MAX_VALUE for none
+    private final long budget;
+    // the greatest number of moves, or Long.MAX_VALUE for no limit
+    private final long iterationLimit;
+    // the listener told of each better allocation, or null for none
+    private final Consumer<ApproximateAllocation> progressListener;
+
+    // the cost of leaving each event unallocated
+    private final long[] penalty;
+    // the venue ids, in non-increasing order of capacity
+    private final int[] byCapacity;
+    // for each event, the number of venues that can host it (which are the
+    // first ones in byCapacity)
+    private final int[] hosts;
+
+    // the venue id of each event, or -1 if it is not allocated
+    private final int[] assignment;
+    // the event id at each venue, or -1 if the venue is free
+    private final int[] occupant;
+    // the traffic on each corridor
+    private final int[] load;
+    // the total traffic over capacity, over all corridors
+    private long overload;
+    // the total cost of the unallocated events
+    private long unallocatedCost;
+
+    // the events and venues changed by the current move, in order
+    private final int[] movedEvents = new int[3];
+    private final int[] movedFrom = new int[3];
+    // the number of changes made by the current move
+    private int moves;
+
+    // the best assignment saved so far
+    private final int[] best;
+    // the cost of the best assignment found so far
+    private long bestCost;
+    // true if the current assignment has cost bestCost but is not saved
+    private boolean bestUnsaved;
+    // the cost of the last allocation reported
+    private long reportedCost;
+    // the value of System.nanoTime() of the last report
+    private long lastReport;
+    // the number of moves made so far
+    private long iterations;
+
+    /*
+     * invariant:
+     *
+     * assignment and occupant are inverse partial maps of events to venues
+     * that can host them &&
+     *
+     * load, overload and unallocatedCost are those of assignment &&
+     *
+     * best has cost bestCost, unless bestUnsaved, in which case assignment
+     * has cost bestCost
+     */
+
+    /**
+     * Creates a new local search of the given problem with the given options,
+     * whose time budget runs from the given value of System.nanoTime().
+     *
+     * @require problem != null && options != null && (options.getTimeBudget()
+     *          != Long.MAX_VALUE || options.getIterationLimit() !=
+     *          Long.MAX_VALUE) && start <= System.nanoTime()
+     */
+    LocalSearch(AllocationProblem problem, LocalSearchOptions options,
+            long start) {
+        this.problem = problem;
+        random = new Random(options.getSeed());
+        this.start = start;
+        budget = options.getTimeBudget() == Long.MAX_VALUE ? Long.MAX_VALUE
+                : TimeUnit.MILLISECONDS.toNanos(options.getTimeBudget());
+        iterationLimit = options.getIterationLimit();
+        progressListener = options.getProgressListener();
+
+        penalty = new long[problem.eventCount()];
+        for (int e = 0; e < problem.eventCount(); e++) {
+            penalty[e] = (long) options.getUnallocatedWeight() * problem
+                    .getEventSize(e);
+            unallocatedCost += penalty[e];
+        }
+        Integer[] sorted = new Integer[problem.venueCount()];
+        for (int v = 0; v < sorted.length; v++) {
+            sorted[v] = v;
+        }
+        Arrays.sort(sorted, (a, b) -> Integer.compare(problem
+                .getVenueCapacity(b), problem.getVenueCapacity(a)));
+        byCapacity = new int[sorted.length];
+        for (int v = 0; v < sorted.length; v++) {
+            byCapacity[v] = sorted[v];
+        }
+        hosts = new int[problem.eventCount()];
+        for (int e = 0; e < problem.eventCount(); e++) {
+            int count = 0;
+            while (count < byCapacity.length && problem.canHost(
+                    byCapacity[count], e)) {
+                count++;
+            }
+            hosts[e] = count;
+        }
+
+        assignment = new int[problem.eventCount()];
+        Arrays.fill(assignment, -1);
+        occupant = new int[problem.venueCount()];
+        Arrays.fill(occupant, -1);
+        load = new int[problem.corridorCount()];
+        best = assignment.clone();
+        bestCost = cost();
+        reportedCost = Long.MAX_VALUE;
+        lastReport = start - REPORT_INTERVAL;
+    }
+
+    /**
+     * Runs the search until its budget is spent, and returns the best
+     * allocation found.
+     *
+     * @ensure Returns the allocation of least cost found. The progress
+     *         listener, if any, has been told of it.
+     */
+    ApproximateAllocation run() {
+        double initial = 1; // the temperature at the start of the search
+        for (long cost : penalty) {
+            initial = Math.max(initial, cost);
+        }
+        double temperature = initial;
+        while (iterations < iterationLimit) {
+            if (iterations % CHECK_INTERVAL == 0) {
+                long now = System.nanoTime();
+                double elapsed = Math.max(budget == Long.MAX_VALUE ? 0
+                        : (double) (now - start) / budget,
+                        (double) iterations / iterationLimit);
+                if (elapsed >= 1) {
+                    break;
+                }
+                temperature = initial * Math.pow(FINAL_TEMPERATURE / initial,
+                        elapsed);
+                if (progressListener != null && bestCost < reportedCost
+                        && now - lastReport >= REPORT_INTERVAL) {
+                    report(now);
+                }
+            }
+            iterations++;
+
+            long before = cost();
+            if (!propose()) {
+                continue;
+            }
+            long delta = cost() - before;
+            if (delta > 0 && random.nextDouble() >= Math.exp(-delta
+                    / temperature)) {
+                undo();
+                continue;
+            }
+            if (delta > 0 && bestUnsaved) {
+                // the move leaves the best assignment, so save it first
+                undo();
+                save();
+                redo();
+            }
+            if (cost() < bestCost) {
+                bestCost = cost();
+                bestUnsaved = true;
+            }
+        }
+        if (bestUnsaved) {
+            save();
+        }
+        ApproximateAllocation result = toResult();
+        if (progressListener != null) {
+            progressListener.accept(result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cost of the current assignment.
+     */
+    private long cost() {
+        return overload + unallocatedCost;
+    }
+
+    /**
+     * Makes a random move, recording its changes so that it can be undone.
+     *
+     * @ensure Returns true if a move was made, or false if the chosen move is
+     *         not allowed and nothing was changed.
+     */
+    private boolean propose() {
+        moves = 0;
+        int event = random.nextInt(assignment.length);
+        int from = assignment[event];
+        if (from != -1 && random.nextInt(UNALLOCATE_ODDS) == 0) {
+            move(event, -1);
+            return true;
+        }
+        if (hosts[event] == 0) {
+            return false;
+        }
+        int venue = byCapacity[random.nextInt(hosts[event])];
+        if (venue == from) {
+            return false;
+        }
+        int other = occupant[venue];
+        if (other == -1) {
+            // move the event to a free venue
+            move(event, venue);
+        } else if (from != -1 && problem.canHost(from, other)) {
+            // swap the venues of the two events
+            move(other, -1);
+            move(event, venue);
+            move(other, from);
+        } else {
+            // put the event in place of the other event
+            move(other, -1);
+            move(event, venue);
+        }
+        return true;
+    }
+
+    /**
+     * Undoes the changes of the current move.
+     *
+     * @ensure The assignment is as it was before the move, and the changes
+     *         of the move are still recorded so that it can be redone.
+     */
+    private void undo() {
+        int count = moves;
+        for (int i = count - 1; i >= 0; i--) {
+            int venue = assignment[movedEvents[i]];
+            setVenue(movedEvents[i], movedFrom[i]);
+            movedFrom[i] = venue;
+        }
+        moves = count;
+    }
+
+    /**
+     * Redoes the changes of the current move after it has been undone.
+     *
+     * @require undo() was the last change to the assignment
+     */
+    private void redo() {
+        for (int i = 0; i < moves; i++) {
+            int venue = assignment[movedEvents[i]];
+            setVenue(movedEvents[i], movedFrom[i]);
+            movedFrom[i] = venue;
+        }
+    }
+
+    /**
+     * Moves the given event to the given venue, recording the change.
+     *
+     * @require venue == -1 || (occupant[venue] == -1 && problem.canHost(venue,
+     *          event)) && moves < 3
+     */
+    private void move(int event, int venue) {
+        movedEvents[moves] = event;
+        movedFrom[moves] = assignment[event];
+        moves++;
+        setVenue(event, venue);
+    }
+
+    /**
+     * Moves the given event to the given venue, or leaves it unallocated if
+     * venue is -1, updating the load, overload and cost.
+     *
+     * @require venue == -1 || (occupant[venue] == -1 && problem.canHost(venue,
+     *          event))
+     */
+    private void setVenue(int event, int venue) {
+        int from = assignment[event];
+        if (from == venue) {
+            return;
+        }
+        if (from == -1) {
+            unallocatedCost -= penalty[event];
+        } else {
+            occupant[from] = -1;
+            addLoad(event, from, -1);
+        }
+        assignment[event] = venue;
+        if (venue == -1) {
+            unallocatedCost += penalty[event];
+        } else {
+            occupant[venue] = event;
+            addLoad(event, venue, 1);
+        }
+    }
+
+    /**
+     * Adds (sign 1) or removes (sign -1) the traffic of the given event at the
+     * given venue to or from the load, updating the overload.
+     */
+    private void addLoad(int event, int venue, int sign) {
+        int[] corridors = problem.getVenueCorridors(venue);
+        for (int k = 0; k < corridors.length; k++) {
+            int corridor = corridors[k];
+            int capacity = problem.getCorridorCapacity(corridor);
+            overload -= Math.max(0, load[corridor] - capacity);
+            load[corridor] += sign * problem.getTraffic(venue, event, k);
+            overload += Math.max(0, load[corridor] - capacity);
+        }
+    }
+
+    /**
+     * Saves the current assignment as the best one.
+     *
+     * @require cost() == bestCost
+     */
+    private void save() {
+        System.arraycopy(assignment, 0, best, 0, assignment.length);
+        bestUnsaved = false;
+    }
+
+    /**
+     * Tells the progress listener of the best allocation found so far.
+     *
+     * @require progressListener != null
+     */
+    private void report(long now) {
+        if (bestUnsaved) {
+            save();
+        }
+        progressListener.accept(toResult());
+        reportedCost = bestCost;
+        lastReport = now;
+    }
+
+    /**
+     * Returns the best saved assignment as an approximate allocation.
+     */
+    private ApproximateAllocation toResult() {
+        Map<Event, Venue> allocation = new HashMap<>();
+        List<Event> unallocated = new ArrayList<>();
+        long bestUnallocatedCost = 0; // the cost of the unallocated events
+        for (int e = 0; e < best.length; e++) {
+            if (best[e] == -1) {
+                unallocated.add(problem.getEvent(e));
+                bestUnallocatedCost += penalty[e];
+            } else {
+                allocation.put(problem.getEvent(e), problem.getVenue(best[e]));
+            }
+        }
+        return new ApproximateAllocation(allocation, unallocated, bestCost
+                - bestUnallocatedCost, iterations);
+    }
+
+}
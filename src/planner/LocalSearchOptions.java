@@ -0,0 +1,190 @@
+package planner;
+
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * A mutable set of options that control how the local-search allocator looks
+ * for a good allocation of events to venues.
+ * </p>
+ *
+ * <p>
+ * The search stops when its time budget has run out or when it has made its
+ * iteration limit of moves, whichever comes first. A search with the same
+ * seed and iteration limit, and no time budget, always returns the same
+ * result. A search with a time budget may make a different number of moves
+ * from one run to the next, and so may return a different result.
+ * </p>
+ *
+ * <p>
+ * A search must have a time budget or an iteration limit (or both). This is
+ * checked when the search starts, rather than as each option is set, so the
+ * options may be set in any order.
+ * </p>
+ */
+public class LocalSearchOptions {
+
+    // the seed of the random number generator
+    private long seed;
+    // the time budget in milliseconds, or Long.MAX_VALUE for none
+    private long timeBudget;
+    // the greatest number of moves, or Long.MAX_VALUE for no limit
+    private long iterationLimit;
+    // the cost of leaving one person unallocated, in units of overload
+    private int unallocatedWeight;
+    // the listener that is told of each better allocation, or null for none
+    private Consumer<ApproximateAllocation> progressListener;
+
+    /*
+     * invariant: timeBudget > 0 && iterationLimit > 0 && unallocatedWeight > 0
+     */
+
+    /**
+     * Creates a new set of options with the default values: the seed is zero,
+     * the time budget is one second, there is no iteration limit, the
+     * unallocated weight is one and there is no progress listener.
+     */
+    public LocalSearchOptions() {
+        seed = 0;
+        timeBudget = 1000;
+        iterationLimit = Long.MAX_VALUE;
+        unallocatedWeight = 1;
+        progressListener = null;
+    }
+
+    /**
+     * Returns the seed of the random number generator used by the search.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the random number generator used by the search.
+     *
+     * @param seed
+     *            the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the time budget of the search in milliseconds, or
+     * Long.MAX_VALUE if it has none.
+     *
+     * @return the time budget
+     */
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * Sets the time budget of the search in milliseconds. Long.MAX_VALUE
+     * means that the search has no time budget, in which case it must have an
+     * iteration limit by the time it starts.
+     *
+     * @param timeBudget
+     *            the time budget in milliseconds
+     * @throws IllegalArgumentException
+     *             if timeBudget <= 0
+     */
+    public void setTimeBudget(long timeBudget) {
+        if (timeBudget <= 0) {
+            throw new IllegalArgumentException(
+                    "The time budget must be positive.");
+        }
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Returns the greatest number of moves the search makes, or
+     * Long.MAX_VALUE if there is no limit.
+     *
+     * @return the iteration limit
+     */
+    public long getIterationLimit() {
+        return iterationLimit;
+    }
+
+    /**
+     * Sets the greatest number of moves the search makes. Long.MAX_VALUE
+     * means that there is no limit, in which case the search must have a time
+     * budget by the time it starts.
+     *
+     * @param iterationLimit
+     *            the iteration limit
+     * @throws IllegalArgumentException
+     *             if iterationLimit <= 0
+     */
+    public void setIterationLimit(long iterationLimit) {
+        if (iterationLimit <= 0) {
+            throw new IllegalArgumentException(
+                    "The iteration limit must be positive.");
+        }
+        this.iterationLimit = iterationLimit;
+    }
+
+    /**
+     * Returns the cost of leaving one person unallocated, in units of
+     * overload.
+     *
+     * @return the unallocated weight
+     */
+    public int getUnallocatedWeight() {
+        return unallocatedWeight;
+    }
+
+    /**
+     * <p>
+     * Sets the cost of leaving one person unallocated, in units of overload.
+     * </p>
+     *
+     * <p>
+     * The search minimises the total traffic over capacity on all corridors,
+     * plus the unallocated weight times the total size of the events that are
+     * not allocated. With a weight of one, an event is only allocated if it
+     * adds less overload than its size. A large weight allocates as many
+     * events as there are venues for, however much overload that causes.
+     * </p>
+     *
+     * @param unallocatedWeight
+     *            the unallocated weight
+     * @throws IllegalArgumentException
+     *             if unallocatedWeight <= 0
+     */
+    public void setUnallocatedWeight(int unallocatedWeight) {
+        if (unallocatedWeight <= 0) {
+            throw new IllegalArgumentException(
+                    "The unallocated weight must be positive.");
+        }
+        this.unallocatedWeight = unallocatedWeight;
+    }
+
+    /**
+     * Returns the listener that is told of each better allocation found, or
+     * null if there is none.
+     *
+     * @return the progress listener
+     */
+    public Consumer<ApproximateAllocation> getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * Sets the listener that is told, from the thread running the search, of
+     * the best allocation found so far each time it improves (at most every
+     * few tens of milliseconds), and of the final result. A null listener
+     * means that no one is told.
+     *
+     * @param progressListener
+     *            the progress listener, or null for none
+     */
+    public void setProgressListener(
+            Consumer<ApproximateAllocation> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+}
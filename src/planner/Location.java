@@ -8,7 +8,10 @@ public class Location implements Comparable<Location> {
 
     // the name of the location
     private String name;
-    /* invariant: name != null */
+    // the id given to the location when it was interned by the registry, or
+    // -1 if it was not interned
+    private int id;
+    /* invariant: name != null && id >= -1 */
 
     /**
      * Creates a new location with the given name.
@@ -23,6 +26,18 @@ public class Location implements Comparable<Location> {
             throw new NullPointerException("Location name cannot be null.");
         }
         this.name = name;
+        this.id = -1;
+    }
+
+    /**
+     * Creates a new interned location with the given name and registry id.
+     *
+     * @require name != null && id >= 0 && no other location with the given
+     *          id exists
+     */
+    Location(String name, int id) {
+        this.name = name;
+        this.id = id;
     }
 
     /**
@@ -46,10 +61,17 @@ public class Location implements Comparable<Location> {
      */
     @Override
     public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
         if (!(object instanceof Location)) {
             return false;
         }
         Location other = (Location) object; // the location to compare
+        if (id >= 0 && other.id >= 0) {
+            // interned locations are equal only if they are the same
+            return false;
+        }
         return name.equals(other.name);
     }
 
@@ -71,7 +93,7 @@ public class Location implements Comparable<Location> {
      * @return true if this class is internally consistent, and false otherwise.
      */
     public boolean checkInvariant() {
-        return name != null;
+        return name != null && id >= -1;
     }
 
     /**
@@ -79,6 +101,9 @@ public class Location implements Comparable<Location> {
      */
     @Override
     public int compareTo(Location other) {
+        if (this == other) {
+            return 0;
+        }
         return name.compareTo(other.name);
     }
 
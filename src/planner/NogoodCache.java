@@ -0,0 +1,193 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A bounded record of the nodes of an allocation search whose sub-searches
+ * are known to fail (nogoods), so that the search does not explore the same
+ * failing sub-search twice.
+ * </p>
+ *
+ * <p>
+ * Whether the events from a given one onwards can be placed depends only on
+ * which venues are used, on the load on each corridor and, when symmetry
+ * breaking is on and the event is interchangeable with the one before it, on
+ * the venue of the event before it. More load only makes a corridor harder to
+ * stay within, so if the sub-search at a node failed, so does the sub-search
+ * at any node with the same event, used venues and previous venue whose load
+ * on every corridor is at least as great.
+ * </p>
+ *
+ * <p>
+ * Nogoods are filed under a key made of the event, the previous venue, the
+ * used venues and the load on each corridor rounded down to one of
+ * LOAD_LEVELS levels of its capacity, so that nodes with nearly the same load
+ * meet under the same key. Each key holds the exact load of the last failure
+ * filed under it, and a node only matches the key if its load dominates that
+ * load. At most MAX_ENTRIES nogoods are kept, and fewer for large problems,
+ * so that the nogoods take about MAX_BYTES at most, counting the objects and
+ * array headers of each entry as well as its array elements; when the cache
+ * is full, the least recently used key is dropped. (Every search has its own
+ * cache, so the bound is per search.) Nodes with fewer than MIN_REMAINING
+ * events left to place are not recorded.
+ * </p>
+ */
+class NogoodCache {
+
+    // the greatest number of nogoods kept
+    private final static int MAX_ENTRIES = 1 << 16;
+    // the greatest number of bytes, roughly, taken by the nogoods kept
+    private final static int MAX_BYTES = 1 << 24;
+    // the bytes taken by each nogood besides its array elements: the map
+    // entry, the key, and the headers of its three arrays
+    private final static int ENTRY_OVERHEAD = 128;
+    // the least number of remaining events for which a node is recorded (a
+    // node with fewer fails faster than it can be looked up)
+    final static int MIN_REMAINING = 2;
+    // the number of levels the load on each corridor is rounded down to
+    private final static int LOAD_LEVELS = 2;
+
+    // the problem being searched
+    private final AllocationProblem problem;
+    // the load of the last failure filed under each key, least recently used
+    // first
+    private final Map<Key, int[]> nogoods;
+    // the levels of the load of the node being looked up
+    private final int[] scratch;
+    // the greatest number of nogoods kept
+    private final int maxEntries;
+
+    /**
+     * Creates a new, empty cache of nogoods for the given problem.
+     *
+     * @require problem != null
+     */
+    NogoodCache(AllocationProblem problem) {
+        this.problem = problem;
+        scratch = new int[problem.corridorCount()];
+        // the bytes taken by one nogood: its levels and load, its used
+        // venues and its overhead
+        long entryBytes = 8L * problem.corridorCount() + 8L * (problem
+                .venueCount() / 64 + 1) + ENTRY_OVERHEAD;
+        maxEntries = (int) Math.max(1, Math.min(MAX_ENTRIES, MAX_BYTES
+                / entryBytes));
+        nogoods = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns true if the node with the given state is known to fail.
+     *
+     * @require 0 <= event < problem.eventCount() && used != null && load !=
+     *          null && load.length == problem.corridorCount()
+     * @ensure Returns true only if a failure was filed under the key of the
+     *         node with a load no greater on any corridor than the given load.
+     *         The given arrays are not modified.
+     */
+    boolean isNogood(int event, int previous, long[] used, int[] load) {
+        // the load of the recorded failure
+        int[] failed = nogoods.get(new Key(event, previous, used, levels(
+                load, scratch)));
+        if (failed == null) {
+            return false;
+        }
+        for (int c = 0; c < load.length; c++) {
+            if (load[c] < failed[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that the sub-search at the node with the given state fails.
+     *
+     * @require 0 <= event < problem.eventCount() && used != null && load !=
+     *          null && load.length == problem.corridorCount() && the
+     *          sub-search at the node fails
+     * @ensure The failure is filed under the key of the node, in place of any
+     *         failure filed there before. The given arrays are not modified.
+     */
+    void add(int event, int previous, long[] used, int[] load) {
+        nogoods.put(new Key(event, previous, used.clone(), levels(load,
+                new int[load.length])), load.clone());
+    }
+
+    /**
+     * Fills the given array with the level of the given load on each
+     * corridor, and returns it.
+     *
+     * @require load != null && levels != null && load.length == levels.length
+     *          == problem.corridorCount()
+     */
+    private int[] levels(int[] load, int[] levels) {
+        for (int c = 0; c < load.length; c++) {
+            int capacity = Math.max(problem.getCorridorCapacity(c), 0);
+            levels[c] = (int) ((long) load[c] * LOAD_LEVELS / (capacity + 1));
+        }
+        return levels;
+    }
+
+    /**
+     * Returns the number of nogoods in the cache.
+     */
+    int size() {
+        return nogoods.size();
+    }
+
+    /**
+     * An immutable key under which nogoods are filed. (The key of a lookup
+     * shares its arrays with the search, and is discarded straight away.)
+     */
+    private static class Key {
+
+        // the id of the next event to be placed
+        private final int event;
+        // the venue of the event before it, or -1 if that does not matter
+        private final int previous;
+        // the set of used venues, as a bitset
+        private final long[] used;
+        // the level of the load on each corridor
+        private final int[] levels;
+        // the hash code of the key, computed once
+        private final int hash;
+
+        /**
+         * Creates a key from the given arrays, which are not copied.
+         */
+        private Key(int event, int previous, long[] used, int[] levels) {
+            this.event = event;
+            this.previous = previous;
+            this.used = used;
+            this.levels = levels;
+            final int prime = 31; // an odd base prime
+            int result = event; // the hash code under construction
+            result = prime * result + previous;
+            result = prime * result + Arrays.hashCode(used);
+            result = prime * result + Arrays.hashCode(levels);
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object; // the key to compare
+            return event == other.event && previous == other.previous
+                    && Arrays.equals(used, other.used) && Arrays.equals(levels,
+                            other.levels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package planner;
+
+/**
+ * <p>
+ * An immutable measure of how good a safe allocation of events to venues is,
+ * for the optimising allocator. Smaller values are better.
+ * </p>
+ * 
+ * <p>
+ * The value of an allocation is a weighted sum of (i) its peak utilisation:
+ * the largest, over all corridors, of the traffic on the corridor divided by
+ * the capacity of the corridor, and (ii) its total load: the sum of the
+ * traffic on all corridors. Minimising the peak utilisation leaves the most
+ * headroom on the busiest corridor.
+ * </p>
+ */
+public class Objective {
+
+    // the weight of the peak utilisation
+    private final double peakWeight;
+    // the weight of the total load
+    private final double loadWeight;
+
+    /*
+     * invariant: peakWeight >= 0 && loadWeight >= 0 && (peakWeight > 0 ||
+     * loadWeight > 0)
+     */
+
+    /**
+     * Creates a new objective that is the weighted sum of the peak
+     * utilisation and the total load of an allocation.
+     * 
+     * @param peakWeight
+     *            the weight of the peak utilisation
+     * @param loadWeight
+     *            the weight of the total load
+     * @throws IllegalArgumentException
+     *             if either weight is negative or not a number, or if both
+     *             weights are zero
+     */
+    public Objective(double peakWeight, double loadWeight) {
+        if (!(peakWeight >= 0) || !(loadWeight >= 0)) {
+            throw new IllegalArgumentException(
+                    "The weights must be non-negative numbers.");
+        }
+        if (peakWeight == 0 && loadWeight == 0) {
+            throw new IllegalArgumentException(
+                    "At least one of the weights must be positive.");
+        }
+        this.peakWeight = peakWeight;
+        this.loadWeight = loadWeight;
+    }
+
+    /**
+     * Returns the objective that is the peak utilisation of an allocation.
+     * 
+     * @return the peak utilisation objective
+     */
+    public static Objective peakUtilisation() {
+        return new Objective(1, 0);
+    }
+
+    /**
+     * Returns the objective that is the total load of an allocation.
+     * 
+     * @return the total load objective
+     */
+    public static Objective totalLoad() {
+        return new Objective(0, 1);
+    }
+
+    /**
+     * Returns the weight of the peak utilisation.
+     * 
+     * @return the weight of the peak utilisation
+     */
+    public double getPeakWeight() {
+        return peakWeight;
+    }
+
+    /**
+     * Returns the weight of the total load.
+     * 
+     * @return the weight of the total load
+     */
+    public double getLoadWeight() {
+        return loadWeight;
+    }
+
+    /**
+     * Returns the value of this objective for an allocation with the given
+     * peak utilisation and total load.
+     * 
+     * @param peak
+     *            the peak utilisation of the allocation
+     * @param total
+     *            the total load of the allocation
+     * @return the value of the objective
+     */
+    public double value(double peak, long total) {
+        return peakWeight * peak + loadWeight * total;
+    }
+
+    /**
+     * Returns the value of this objective for the given traffic.
+     * 
+     * @param traffic
+     *            the traffic caused by an allocation
+     * @return the value of the objective for the traffic
+     * @throws NullPointerException
+     *             if traffic is null
+     */
+    public double value(Traffic traffic) {
+        return value(traffic.getPeakUtilisation(), traffic.getTotalTraffic());
+    }
+
+    @Override
+    public String toString() {
+        return peakWeight + " * peak utilisation + " + loadWeight
+                + " * total load";
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Objective)) {
+            return false;
+        }
+        Objective other = (Objective) object; // the objective to compare
+        return Double.compare(peakWeight, other.peakWeight) == 0 && Double
+                .compare(loadWeight, other.loadWeight) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        // We create a polynomial hash-code based on the two weights
+        final int prime = 31; // an odd base prime
+        int result = 1; // the hash code under construction
+        result = prime * result + Double.hashCode(peakWeight);
+        result = prime * result + Double.hashCode(loadWeight);
+        return result;
+    }
+
+}
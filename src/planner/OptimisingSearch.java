@@ -0,0 +1,302 @@
+package planner;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>
+ * A branch-and-bound search for the safe allocation of the events of a
+ * compiled allocation problem to its venues that minimises an Objective.
+ * </p>
+ * 
+ * <p>
+ * At each node, the search works out a lower bound on the objective of every
+ * safe allocation below it: the peak utilisation so far, raised by the least
+ * traffic the remaining events must add to each corridor, and the total load
+ * so far plus the least total traffic the remaining events must add (see
+ * AllocationProblem). Since the weights of an objective are non-negative, the
+ * weighted sum of these bounds is a lower bound on the objective, so a node
+ * whose bound is no better than the best allocation found so far is cut off
+ * without losing the optimum. The venues for each event are tried in
+ * increasing order of the bound of the node they lead to.
+ * </p>
+ * 
+ * <p>
+ * Like the first-solution search, only canonical assignments of
+ * interchangeable events and venues are searched (swapping them does not
+ * change the objective), and nodes that cannot be completed are cut off.
+ * </p>
+ * 
+ * <p>
+ * If the search has a deadline, it stops once the deadline has passed and the
+ * best allocation found so far is the result. In the same way it stops once
+ * its cancellation condition, which is polled with the deadline, holds.
+ * </p>
+ */
+class OptimisingSearch {
+
+    // the number of nodes between checks of the deadline
+    private final static int CHECK_INTERVAL = 1024;
+
+    // the problem being searched
+    private final AllocationProblem problem;
+    // the search holding the load and used venues of the current node
+    private final AllocationSearch search;
+    // the objective to be minimised
+    private final Objective objective;
+    // the value of System.nanoTime() after which the search stops
+    private final long deadline;
+
+    // the venue id assigned to each placed event
+    private final int[] assignment;
+    // for each event, the venues to be tried for it in order
+    private final int[][] candidates;
+    // for each event, the bound of the node each candidate leads to
+    private final double[][] bounds;
+    // for each event, the peak utilisation after placing each candidate
+    private final double[][] peaks;
+
+    // the best safe assignment found so far, or null if none has been found
+    private int[] best;
+    // the objective value of best, or infinity if none has been found
+    private double bestValue;
+    // the record of the work done by the search
+    private SearchStatistics statistics;
+    // the condition under which the search should stop early
+    private BooleanSupplier cancelled;
+    // the number of nodes visited until the next check of the deadline
+    private int untilCheck;
+    // true if the search has stopped because the deadline has passed
+    private boolean timedOut;
+    // true if the search has stopped because of the cancellation condition
+    private boolean stopped;
+    // the id of the event of the node being visited
+    private int depth;
+
+    /**
+     * Creates a new search of the given problem for the allocation that
+     * minimises the given objective, that stops at the given deadline.
+     * 
+     * @require problem != null && objective != null && deadline is a value of
+     *          System.nanoTime(), or Long.MAX_VALUE for no deadline
+     */
+    OptimisingSearch(AllocationProblem problem, Objective objective,
+            long deadline) {
+        this.problem = problem;
+        this.objective = objective;
+        this.deadline = deadline;
+        search = new AllocationSearch(problem);
+        search.setSymmetryBreaking(true);
+        assignment = new int[problem.eventCount()];
+        candidates = new int[problem.eventCount()][problem.venueCount()];
+        bounds = new double[problem.eventCount()][problem.venueCount()];
+        peaks = new double[problem.eventCount()][problem.venueCount()];
+        bestValue = Double.POSITIVE_INFINITY;
+        statistics = new SearchStatistics();
+        cancelled = () -> false;
+        untilCheck = CHECK_INTERVAL;
+    }
+
+    /**
+     * Sets the record to which the nodes visited by the search are added.
+     * 
+     * @require statistics != null
+     */
+    void setStatistics(SearchStatistics statistics) {
+        this.statistics = statistics;
+        search.setStatistics(statistics);
+    }
+
+    /**
+     * Sets the condition under which the search should stop early, keeping
+     * the best allocation found so far. The condition is polled with the
+     * deadline rather than at every node.
+     * 
+     * @require cancelled != null
+     */
+    void setCancellation(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Returns the safe assignment that minimises the objective, as an array
+     * holding the venue id assigned to each event id, or the best one found
+     * before the deadline.
+     * 
+     * @ensure Returns an optimal safe assignment, or, if the deadline passed
+     *         during the search, the best safe assignment found before it (or
+     *         null if none was found). Returns null if there is no safe
+     *         assignment.
+     */
+    int[] optimise() {
+        if (search.canComplete(0)) {
+            optimise(0, 0, 0);
+        }
+        return best;
+    }
+
+    /**
+     * Returns true if the search stopped because the deadline passed, so the
+     * result of optimise() may not be optimal.
+     */
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Returns true if the search stopped because of the cancellation
+     * condition, so the result of optimise() may not be optimal.
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns the objective value of the best safe assignment found so far,
+     * or infinity if none has been found.
+     */
+    double getBestValue() {
+        return bestValue;
+    }
+
+    /**
+     * Returns the id of the event that the search was placing at the node it
+     * visited last, which is the number of events placed above that node.
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Searches the completions of the current node for one that is better
+     * than the best found so far.
+     * 
+     * @require the events with ids less than event are placed, safely, with
+     *          the given peak utilisation and total load
+     * @ensure best and bestValue are updated with any better safe completion
+     *         found. The placed events are as they were on entry.
+     */
+    private void optimise(int event, double peak, long total) {
+        /* BASE CASE: no more events to allocate */
+        if (event == problem.eventCount()) {
+            double value = objective.value(peak, total);
+            if (value < bestValue) {
+                best = assignment.clone();
+                bestValue = value;
+            }
+            return;
+        }
+
+        statistics.addNode();
+        depth = event;
+        if (--untilCheck == 0) {
+            untilCheck = CHECK_INTERVAL;
+            timedOut = deadline != Long.MAX_VALUE
+                    && System.nanoTime() - deadline > 0;
+            stopped = !timedOut && cancelled.getAsBoolean();
+        }
+        if (timedOut || stopped) {
+            return;
+        }
+
+        /* RECURSIVE CASE: there is at least one more event to allocate. */
+        int count = orderCandidates(event, peak, total);
+        for (int i = 0; i < count && bounds[event][i] < bestValue; i++) {
+            int venue = candidates[event][i];
+            search.place(event, venue);
+            if (search.canComplete(event + 1)) {
+                assignment[event] = venue;
+                optimise(event + 1, peaks[event][i], total + traffic(event,
+                        venue));
+            }
+            search.remove(event, venue);
+        }
+    }
+
+    /**
+     * Fills candidates[event] with the venues at which the given event can
+     * safely be placed and that lead to a node with a bound better than the
+     * best value so far, in ascending order of that bound.
+     * 
+     * @require the events with ids less than event are placed, safely, with
+     *          the given peak utilisation and total load
+     * @ensure Returns the number of candidates. bounds[event] and peaks[event]
+     *         hold the bound and peak utilisation of the node each candidate
+     *         leads to. The placed events are as they were on entry.
+     */
+    private int orderCandidates(int event, double peak, long total) {
+        int count = 0; // the number of candidates found so far
+        for (int venue = search.nextFreeHost(event, 0); venue < problem
+                .venueCount(); venue = search.nextFreeHost(event, venue + 1)) {
+            if (!search.canPlace(event, venue) || !search.place(event,
+                    venue)) {
+                continue;
+            }
+            // the peak utilisation with the event placed at the venue
+            double childPeak = peak;
+            for (int corridor : problem.getVenueCorridors(venue)) {
+                childPeak = Math.max(childPeak, utilisation(corridor, 0));
+            }
+            double bound = bound(event + 1, childPeak, total + traffic(event,
+                    venue));
+            search.remove(event, venue);
+            if (bound >= bestValue) {
+                continue;
+            }
+            // insert the venue after the candidates with the same or a lower
+            // bound
+            int i = count++;
+            while (i > 0 && bounds[event][i - 1] > bound) {
+                candidates[event][i] = candidates[event][i - 1];
+                bounds[event][i] = bounds[event][i - 1];
+                peaks[event][i] = peaks[event][i - 1];
+                i--;
+            }
+            candidates[event][i] = venue;
+            bounds[event][i] = bound;
+            peaks[event][i] = childPeak;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a lower bound on the objective of every safe completion of the
+     * current node.
+     * 
+     * @require the events with ids less than event are placed, safely, with
+     *          the given peak utilisation and total load
+     */
+    private double bound(int event, double peak, long total) {
+        double peakBound = peak; // the bound on the peak utilisation
+        int[] corridors = problem.getBoundCorridors(event);
+        for (int k = 0; k < corridors.length; k++) {
+            peakBound = Math.max(peakBound, utilisation(corridors[k], problem
+                    .getBoundTraffic(event, k)));
+        }
+        return objective.value(peakBound, total + problem.getBoundTotal(
+                event));
+    }
+
+    /**
+     * Returns the utilisation of the given corridor if the given amount of
+     * traffic were added to its current load.
+     */
+    private double utilisation(int corridor, int extra) {
+        return (double) (search.getLoad(corridor) + extra) / problem
+                .getCorridorCapacity(corridor);
+    }
+
+    /**
+     * Returns the total traffic that the given event generates at the given
+     * venue.
+     * 
+     * @require problem.canHost(venue, event)
+     */
+    private long traffic(int event, int venue) {
+        long total = 0; // the total traffic so far
+        for (int k = 0; k < problem.getVenueCorridors(venue).length; k++) {
+            total += problem.getTraffic(venue, event, k);
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,34 @@
+package planner;
+
+/**
+ * How a run of a Solver ended.
+ */
+public enum Outcome {
+
+    /**
+     * A safe allocation was found (and, if the solver has an objective, it
+     * was proved to be optimal).
+     */
+    FOUND,
+
+    /**
+     * The solver proved that there is no safe allocation.
+     */
+    INFEASIBLE,
+
+    /**
+     * The deadline passed before the solver finished. If the solver has an
+     * objective, the best safe allocation found before the deadline, if any,
+     * is returned with this outcome.
+     */
+    TIMED_OUT,
+
+    /**
+     * The solver was cancelled, through its cancellation token or by
+     * interrupting the thread running it, before it finished. If the solver
+     * has an objective, the best safe allocation found before then, if any,
+     * is returned with this outcome.
+     */
+    CANCELLED
+
+}
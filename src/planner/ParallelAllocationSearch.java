@@ -0,0 +1,199 @@
+package planner;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * A depth-first search for a safe allocation of the events of a compiled
+ * allocation problem to its venues, that runs on several threads of a
+ * fork-join pool.
+ * </p>
+ * 
+ * <p>
+ * The top levels of the event-to-venue decision tree are split into tasks,
+ * one for each safe choice of venue, which are stolen by idle workers. Below
+ * the split depth each task runs a sequential AllocationSearch of its subtree.
+ * The tasks share the best safe allocation found so far, and a task stops as
+ * soon as it can no longer improve on it. Like the sequential search used by
+ * Allocator.allocate, only canonical assignments of interchangeable events and
+ * venues are searched.
+ * </p>
+ * 
+ * <p>
+ * If the search is deterministic, the result is the first safe allocation in
+ * sequential search order (i.e. the same allocation that AllocationSearch
+ * finds with the default SearchOptions), and a task only stops once an
+ * allocation that precedes its whole subtree has been found. Otherwise the
+ * first safe allocation found by any worker is returned, and every task stops
+ * as soon as there is one.
+ * </p>
+ */
+class ParallelAllocationSearch {
+
+    // the number of tasks to aim for per worker thread
+    private final static int TASKS_PER_THREAD = 16;
+
+    // the problem being searched
+    private final AllocationProblem problem;
+    // the number of worker threads
+    private final int parallelism;
+    // whether the result must be the first in sequential search order
+    private final boolean deterministic;
+    // the depth of the decision tree below which tasks are not split
+    private final int splitDepth;
+    // the best safe assignment found so far, or null if none has been found
+    private final AtomicReference<int[]> best;
+
+    /**
+     * Creates a new parallel search of the given problem.
+     * 
+     * @require problem != null && parallelism > 0
+     */
+    ParallelAllocationSearch(AllocationProblem problem, int parallelism,
+            boolean deterministic) {
+        this.problem = problem;
+        this.parallelism = parallelism;
+        this.deterministic = deterministic;
+        this.best = new AtomicReference<>();
+
+        // split until there are enough subtrees to keep every worker busy
+        int depth = 0; // the split depth under construction
+        long tasks = 1; // an estimate of the number of tasks at depth
+        while (depth < problem.eventCount() - 1
+                && tasks < (long) parallelism * TASKS_PER_THREAD) {
+            tasks *= Math.max(2, problem.venueCount() - depth);
+            depth++;
+        }
+        this.splitDepth = depth;
+    }
+
+    /**
+     * Returns a safe allocation, as an array holding the venue id assigned to
+     * each event id, or null if there is no safe allocation.
+     * 
+     * @ensure Returns a safe assignment, or null if there is none. If the
+     *         search is deterministic, the assignment returned is the
+     *         lexicographically smallest safe assignment.
+     */
+    int[] first() {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SubtreeTask(new int[0]));
+        } finally {
+            pool.shutdown();
+        }
+        return best.get();
+    }
+
+    /**
+     * Offers a safe assignment as the result of the search.
+     * 
+     * @require assignment is a safe assignment of all events
+     * @ensure The best assignment is replaced by the given one if there is no
+     *         best assignment, or if the search is deterministic and the given
+     *         one precedes it.
+     */
+    private void offer(int[] assignment) {
+        int[] current = best.get();
+        while (current == null || (deterministic && compare(assignment,
+                current, assignment.length) < 0)) {
+            if (best.compareAndSet(current, assignment)) {
+                return;
+            }
+            current = best.get();
+        }
+    }
+
+    /**
+     * Returns true if searching the subtree of assignments that extend the
+     * given prefix can no longer change the result of the search.
+     * 
+     * @require prefix != null
+     */
+    private boolean cancelled(int[] prefix) {
+        int[] current = best.get();
+        if (current == null) {
+            return false;
+        }
+        return !deterministic || compare(current, prefix, prefix.length) < 0;
+    }
+
+    /**
+     * Compares the first length entries of two assignments lexicographically.
+     * 
+     * @require a.length >= length && b.length >= length
+     * @ensure Returns a negative number, zero or a positive number if the
+     *         first length entries of a precede, equal or follow those of b.
+     */
+    private static int compare(int[] a, int[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A task that searches the subtree of assignments extending a prefix.
+     */
+    @SuppressWarnings("serial")
+    private class SubtreeTask extends RecursiveAction {
+
+        // the venue ids assigned to the first prefix.length events
+        private final int[] prefix;
+
+        /**
+         * Creates a task for the subtree below the given safe prefix.
+         * 
+         * @require prefix != null && prefix is a safe partial assignment
+         */
+        SubtreeTask(int[] prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled(prefix)) {
+                return;
+            }
+            int depth = prefix.length; // the next event to be placed
+            AllocationSearch search = new AllocationSearch(problem);
+            search.configure(new SearchOptions());
+            for (int event = 0; event < depth; event++) {
+                search.place(event, prefix[event]);
+            }
+
+            if (depth >= splitDepth) {
+                search.setCancellation(() -> cancelled(prefix));
+                int[] assignment = search.firstFrom(depth);
+                if (assignment != null) {
+                    offer(assignment);
+                }
+                return;
+            }
+
+            // one subtask for each venue that the next event can safely use
+            List<SubtreeTask> subtasks = new ArrayList<>();
+            for (int venue = search.nextFreeHost(depth, 0); venue < problem
+                    .venueCount(); venue = search.nextFreeHost(depth, venue
+                            + 1)) {
+                if (!search.canPlace(depth, venue) || !search.place(depth,
+                        venue)) {
+                    continue;
+                }
+                boolean viable = search.canComplete(depth + 1);
+                search.remove(depth, venue);
+                if (viable) {
+                    int[] child = Arrays.copyOf(prefix, depth + 1);
+                    child[depth] = venue;
+                    subtasks.add(new SubtreeTask(child));
+                }
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+}
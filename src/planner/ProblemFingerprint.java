@@ -0,0 +1,126 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable canonical summary of an allocation problem: two problems with
+ * the same fingerprint have the same safe allocations, up to renaming their
+ * events, venues and corridors.
+ * </p>
+ * 
+ * <p>
+ * The fingerprint is made of two parts. The event part is the sizes of the
+ * events in ascending order, since events of the same size are
+ * interchangeable. The venue part is, for each venue in the order given, its
+ * capacity and its capacity traffic on each of its corridors, followed by the
+ * capacity of each corridor. Corridors are numbered in the order in which
+ * they first appear in the capacity traffic of the venues (taking the
+ * corridors of each venue in their natural order), so the fingerprint does
+ * not depend on the names of the locations.
+ * </p>
+ */
+class ProblemFingerprint {
+
+    // the sizes of the events, in ascending order
+    private final int[] eventPart;
+    // the capacity and capacity traffic of each venue, then the capacity of
+    // each corridor
+    private final int[] venuePart;
+    // the hash code of the fingerprint, computed once
+    private final int hash;
+
+    /*
+     * invariant: eventPart is in ascending order
+     */
+
+    /**
+     * Creates the fingerprint of the problem of allocating the given events
+     * to the given venues.
+     * 
+     * @require events != null && venues != null && !events.contains(null) &&
+     *          !venues.contains(null)
+     */
+    ProblemFingerprint(List<Event> events, List<Venue> venues) {
+        eventPart = new int[events.size()];
+        for (int e = 0; e < eventPart.length; e++) {
+            eventPart[e] = events.get(e).getSize();
+        }
+        Arrays.sort(eventPart);
+        venuePart = venuePart(venues);
+        final int prime = 31; // an odd base prime
+        int result = 1; // the hash code under construction
+        result = prime * result + Arrays.hashCode(eventPart);
+        result = prime * result + Arrays.hashCode(venuePart);
+        hash = result;
+    }
+
+    /**
+     * Returns the venue part of the fingerprint of the given venues.
+     * 
+     * @require venues != null && !venues.contains(null)
+     */
+    private static int[] venuePart(List<Venue> venues) {
+        // the number given to each corridor seen so far
+        Map<Corridor, Integer> numbers = new HashMap<>();
+        // the corridors in the order of their numbers
+        List<Corridor> corridors = new ArrayList<>();
+        // the fingerprint of the venues under construction
+        int[] part = new int[4 * venues.size() + 16];
+        int length = 0; // the number of entries of part filled in so far
+        for (Venue venue : venues) {
+            Traffic traffic = venue.getCapacityTraffic();
+            Corridor[] used = traffic.getCorridorsWithTraffic().toArray(
+                    new Corridor[0]);
+            Arrays.sort(used);
+            if (length + 2 + 2 * used.length > part.length) {
+                part = Arrays.copyOf(part, 2 * (length + 2 + 2
+                        * used.length));
+            }
+            part[length++] = venue.getCapacity();
+            part[length++] = used.length;
+            for (Corridor corridor : used) {
+                Integer number = numbers.get(corridor);
+                if (number == null) {
+                    number = corridors.size();
+                    numbers.put(corridor, number);
+                    corridors.add(corridor);
+                }
+                part[length++] = number;
+                part[length++] = traffic.getTraffic(corridor);
+            }
+        }
+        int[] result = Arrays.copyOf(part, length + corridors.size());
+        for (Corridor corridor : corridors) {
+            result[length++] = corridor.getCapacity();
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the venue part of this fingerprint is the same as that
+     * of the given fingerprint, and false otherwise.
+     * 
+     * @require other != null
+     */
+    boolean sameVenues(ProblemFingerprint other) {
+        return Arrays.equals(venuePart, other.venuePart);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof ProblemFingerprint)) {
+            return false;
+        }
+        // the fingerprint to compare
+        ProblemFingerprint other = (ProblemFingerprint) object;
+        return hash == other.hash && Arrays.equals(eventPart, other.eventPart)
+                && Arrays.equals(venuePart, other.venuePart);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+}
@@ -0,0 +1,134 @@
+package planner;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * A registry that numbers traffic corridors densely from zero, so that
+ * traffic can be stored in arrays indexed by corridor id instead of in maps
+ * keyed by corridor, and that interns locations and corridors, so that equal
+ * ones read from different places are the same object.
+ * </p>
+ *
+ * <p>
+ * Equal corridors (see Corridor.equals) get the same id, and each id has one
+ * representative corridor, whose start and end are interned locations. The
+ * representative is the first corridor registered with the id if its
+ * locations are interned, or else an equal corridor made from interned
+ * locations. Equal locations interned get the same location and the same id.
+ * Ids are never reused, and nothing is removed, so the registry grows with
+ * the number of distinct locations and corridors a program uses. The
+ * registry may be used from several threads at once.
+ * </p>
+ */
+final class Registry {
+
+    // the id of each corridor registered
+    private final static Map<Corridor, Integer> corridorIds =
+            new ConcurrentHashMap<>();
+    // the representative corridor of each id, and room for more; replaced
+    // (under the lock of the class) when it is full
+    private static volatile Corridor[] corridors = new Corridor[64];
+    // the number of corridor ids given out
+    private static int corridorCount = 0;
+    // the interned location with each name
+    private final static Map<String, Location> locations =
+            new ConcurrentHashMap<>();
+
+    /*
+     * invariant: corridorIds maps each of corridors[0 .. corridorCount) to
+     * its index, and every corridor registered is equal to one of them &&
+     * the start and end of each of corridors[0 .. corridorCount) are in
+     * locations && the ids of the locations in locations are distinct and
+     * from 0 to locations.size() - 1
+     */
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private Registry() {
+    }
+
+    /**
+     * Returns the id of the given corridor, registering it if no equal
+     * corridor has been registered.
+     *
+     * @require corridor != null
+     * @ensure Returns the same id for equal corridors, and different ids for
+     *         corridors that are not equal.
+     */
+    static int corridorId(Corridor corridor) {
+        Integer id = corridorIds.get(corridor);
+        if (id != null) {
+            return id;
+        }
+        synchronized (Registry.class) {
+            id = corridorIds.get(corridor);
+            if (id == null) {
+                if (corridorCount == corridors.length) {
+                    corridors = Arrays.copyOf(corridors, 2 * corridorCount);
+                }
+                Location start = location(corridor.getStart().getName());
+                Location end = location(corridor.getEnd().getName());
+                if (start != corridor.getStart() || end != corridor
+                        .getEnd()) {
+                    corridor = new Corridor(start, end, corridor
+                            .getCapacity());
+                }
+                id = corridorCount++;
+                corridors[id] = corridor;
+                // published last, so that a thread that finds the id can
+                // read the corridor
+                corridorIds.put(corridor, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Returns the representative corridor with the given id.
+     *
+     * @require id was returned by corridorId
+     */
+    static Corridor corridor(int id) {
+        // the id was published after the corridor was stored, and arrays
+        // are only ever replaced by longer copies
+        return corridors[id];
+    }
+
+    /**
+     * Returns the representative corridor equal to a corridor with the given
+     * start, end and capacity, registering one if need be.
+     *
+     * @require start != null && end != null && !start.equals(end) && capacity
+     *          > 0
+     * @ensure Returns the same corridor for equal arguments, and its start
+     *         and end are interned locations.
+     */
+    static Corridor corridor(Location start, Location end, int capacity) {
+        Location internedStart = location(start.getName());
+        Location internedEnd = location(end.getName());
+        return corridor(corridorId(new Corridor(internedStart, internedEnd,
+                capacity)));
+    }
+
+    /**
+     * Returns the interned location with the given name, interning one if no
+     * location with that name has been interned.
+     *
+     * @require name != null
+     * @ensure Returns the same location, with the same id, for equal names.
+     */
+    static Location location(String name) {
+        Location location = locations.get(name);
+        if (location != null) {
+            return location;
+        }
+        synchronized (Registry.class) {
+            return locations.computeIfAbsent(name, key -> new Location(key,
+                    locations.size()));
+        }
+    }
+
+}
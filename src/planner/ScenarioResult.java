@@ -0,0 +1,109 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * The immutable result of one scenario of a batch allocation: the events of
+ * the scenario, the safe allocation found for them, if any, how long the
+ * scenario took to solve and the work done by its search.
+ */
+public class ScenarioResult {
+
+    // the position of the scenario in the batch
+    private final int index;
+    // the events of the scenario
+    private final List<Event> events;
+    // the safe allocation found, or null if there is none
+    private final Map<Event, Venue> allocation;
+    // the time taken to solve the scenario, in nanoseconds
+    private final long elapsedNanos;
+    // the work done by the search
+    private final SearchStatistics statistics;
+
+    /*
+     * invariant: index >= 0 && events != null && elapsedNanos >= 0 &&
+     * statistics != null
+     */
+
+    /**
+     * Creates a new result.
+     * 
+     * @require index >= 0 && events != null && elapsedNanos >= 0 &&
+     *          statistics != null
+     */
+    ScenarioResult(int index, List<Event> events,
+            Map<Event, Venue> allocation, long elapsedNanos,
+            SearchStatistics statistics) {
+        this.index = index;
+        this.events = Collections.unmodifiableList(events);
+        this.allocation = (allocation == null ? null : Collections
+                .unmodifiableMap(allocation));
+        this.elapsedNanos = elapsedNanos;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the position of the scenario in the batch it was submitted in,
+     * counting from zero.
+     * 
+     * @return the index of the scenario
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the events of the scenario.
+     * 
+     * @return an unmodifiable list of the events, in the order given
+     */
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Returns the safe allocation found for the scenario, or null if there is
+     * no safe allocation.
+     * 
+     * @return an unmodifiable safe allocation of events to venues, or null
+     */
+    public Map<Event, Venue> getAllocation() {
+        return allocation;
+    }
+
+    /**
+     * Returns true if a safe allocation was found for the scenario.
+     * 
+     * @return whether the allocation is not null
+     */
+    public boolean isFeasible() {
+        return allocation != null;
+    }
+
+    /**
+     * Returns the time taken to solve the scenario, from when it started to
+     * run (not when it was submitted), in nanoseconds.
+     * 
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the work done by the search for the scenario.
+     * 
+     * @return the statistics of the search
+     */
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return "scenario " + index + ": " + (allocation == null ? "infeasible"
+                : "allocated") + " in " + elapsedNanos / 1000 + "us, "
+                + statistics;
+    }
+
+}
@@ -0,0 +1,265 @@
+package planner;
+
+/**
+ * <p>
+ * A mutable set of options that control how an allocation search looks for a
+ * safe allocation of events to venues.
+ * </p>
+ * 
+ * <p>
+ * None of the options change whether a safe allocation is found; they only
+ * affect how long the search takes, and which of the safe allocations is
+ * returned.
+ * </p>
+ */
+public class SearchOptions {
+
+    // the order in which events are allocated
+    private EventOrder eventOrder;
+    // the order in which the venues for each event are tried
+    private VenueOrder venueOrder;
+    // whether nodes that cannot lead to a safe allocation are cut off
+    private boolean pruning;
+    // whether sub-searches known to fail are recorded and not repeated
+    private boolean nogoodLearning;
+    // whether venues that share no corridors are searched separately
+    private boolean decomposition;
+    // whether the overload check is skipped for venues dominated by a venue
+    // that overloads
+    private boolean dominancePruning;
+
+    /* invariant: eventOrder != null && venueOrder != null */
+
+    /**
+     * Creates a new set of options with the default values: events are
+     * allocated, and venues tried, in the order in which they are given,
+     * pruning is on, and nogood learning, decomposition and dominance
+     * pruning are off.
+     */
+    public SearchOptions() {
+        eventOrder = EventOrder.INPUT;
+        venueOrder = VenueOrder.INPUT;
+        pruning = true;
+        nogoodLearning = false;
+        decomposition = false;
+        dominancePruning = false;
+    }
+
+    /**
+     * Creates a new set of options with the same values as the given options.
+     * Later changes to either set of options do not affect the other.
+     * 
+     * @param options
+     *            the options to copy
+     * @throws NullPointerException
+     *             if options is null
+     */
+    public SearchOptions(SearchOptions options) {
+        if (options == null) {
+            throw new NullPointerException("The options cannot be null.");
+        }
+        eventOrder = options.eventOrder;
+        venueOrder = options.venueOrder;
+        pruning = options.pruning;
+        nogoodLearning = options.nogoodLearning;
+        decomposition = options.decomposition;
+        dominancePruning = options.dominancePruning;
+    }
+
+    /**
+     * Returns the order in which events are allocated.
+     * 
+     * @return the event order
+     */
+    public EventOrder getEventOrder() {
+        return eventOrder;
+    }
+
+    /**
+     * Sets the order in which events are allocated.
+     * 
+     * @param eventOrder
+     *            the event order
+     * @throws NullPointerException
+     *             if eventOrder is null
+     */
+    public void setEventOrder(EventOrder eventOrder) {
+        if (eventOrder == null) {
+            throw new NullPointerException("The event order cannot be null.");
+        }
+        this.eventOrder = eventOrder;
+    }
+
+    /**
+     * Returns the order in which the venues for each event are tried.
+     * 
+     * @return the venue order
+     */
+    public VenueOrder getVenueOrder() {
+        return venueOrder;
+    }
+
+    /**
+     * Sets the order in which the venues for each event are tried.
+     * 
+     * @param venueOrder
+     *            the venue order
+     * @throws NullPointerException
+     *             if venueOrder is null
+     */
+    public void setVenueOrder(VenueOrder venueOrder) {
+        if (venueOrder == null) {
+            throw new NullPointerException("The venue order cannot be null.");
+        }
+        this.venueOrder = venueOrder;
+    }
+
+    /**
+     * Returns true if pruning is on, and false otherwise.
+     * 
+     * @return whether pruning is on
+     */
+    public boolean isPruning() {
+        return pruning;
+    }
+
+    /**
+     * <p>
+     * Sets whether the search cuts off partial allocations that cannot be
+     * extended to a safe allocation before it tries to extend them.
+     * </p>
+     * 
+     * <p>
+     * With pruning on, each time an event is placed the search checks (i)
+     * that each of the remaining events could still be placed on its own at
+     * enough free venues without overloading a corridor (forward checking),
+     * and (ii) that the least traffic the remaining events must generate on
+     * each corridor, wherever they are placed, fits in the capacity left on
+     * that corridor.
+     * </p>
+     * 
+     * @param pruning
+     *            whether pruning is on
+     */
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Returns true if nogood learning is on, and false otherwise.
+     * 
+     * @return whether nogood learning is on
+     */
+    public boolean isNogoodLearning() {
+        return nogoodLearning;
+    }
+
+    /**
+     * <p>
+     * Sets whether the search records the partial allocations it could not
+     * extend (nogoods), so that it does not try to extend an equivalent
+     * partial allocation again.
+     * </p>
+     * 
+     * <p>
+     * Two partial allocations are equivalent if they place the same events at
+     * the same set of venues, and the load of one on each corridor is at least
+     * that of the other. On tight problems the search can reach the same
+     * failure through many different branches, and nogood learning turns each
+     * repeat into a single lookup. The memory used is bounded: only the most
+     * recently used nogoods are kept. The hits and misses are counted in the
+     * search statistics.
+     * </p>
+     * 
+     * <p>
+     * Each lookup hashes the load on every corridor, so nogood learning only
+     * pays for itself when repeats are common. On most problems the search
+     * visits fewer nodes with it on but takes longer, which is why it is off
+     * by default.
+     * </p>
+     * 
+     * @param nogoodLearning
+     *            whether nogood learning is on
+     */
+    public void setNogoodLearning(boolean nogoodLearning) {
+        this.nogoodLearning = nogoodLearning;
+    }
+
+    /**
+     * Returns true if decomposition is on, and false otherwise.
+     * 
+     * @return whether decomposition is on
+     */
+    public boolean isDecomposition() {
+        return decomposition;
+    }
+
+    /**
+     * <p>
+     * Sets whether the venues are split into components that share no
+     * corridors, and each component searched separately.
+     * </p>
+     * 
+     * <p>
+     * Venues in different components only interact in that each event goes to
+     * one venue, so with decomposition on the search decides which component
+     * hosts each event, and checks each component against the events given
+     * to it on its own. This turns a search over every combination of venues
+     * into many small searches when the venues fall into many independent
+     * regions, and makes no difference when they all share corridors.
+     * </p>
+     * 
+     * <p>
+     * The allocation found with decomposition on is generally not the first
+     * one in search order, which is why it is off by default: with it off,
+     * Allocator.allocate(events, venues) returns the same allocation as the
+     * deterministic parallel search.
+     * </p>
+     * 
+     * @param decomposition
+     *            whether decomposition is on
+     */
+    public void setDecomposition(boolean decomposition) {
+        this.decomposition = decomposition;
+    }
+
+    /**
+     * Returns true if dominance pruning is on, and false otherwise.
+     * 
+     * @return whether dominance pruning is on
+     */
+    public boolean isDominancePruning() {
+        return dominancePruning;
+    }
+
+    /**
+     * <p>
+     * Sets whether the search skips a venue for an event once a venue that
+     * dominates it has been found to overload a corridor with the event.
+     * </p>
+     * 
+     * <p>
+     * A venue dominates another if it has at least the other's capacity and
+     * generates no more traffic per person on any corridor, so an event that
+     * overloads a corridor at the dominating venue overloads one at the
+     * other. The skip is only possible once the dominating venue has been
+     * tried, so dominance pruning does most with the DOMINANT_FIRST venue
+     * order.
+     * </p>
+     * 
+     * <p>
+     * The skipped venue would have been rejected by its own overload check,
+     * so dominance pruning never removes a branch of the search: it only
+     * replaces some overload checks by lookups, which rarely saves more time
+     * than the lookups cost. This is why it is off by default. The overload
+     * checks skipped are counted in the search statistics.
+     * </p>
+     * 
+     * @param dominancePruning
+     *            whether dominance pruning is on
+     */
+    public void setDominancePruning(boolean dominancePruning) {
+        this.dominancePruning = dominancePruning;
+    }
+
+}
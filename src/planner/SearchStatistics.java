@@ -0,0 +1,173 @@
+package planner;
+
+/**
+ * <p>
+ * A mutable record of how much work an allocation search did.
+ * </p>
+ * 
+ * <p>
+ * A node is a partial allocation that the search extends by placing the next
+ * event. Comparing the counts of a search with and without pruning (see
+ * SearchOptions) shows how much of the search tree the pruning cuts off.
+ * </p>
+ */
+public class SearchStatistics {
+
+    // the number of nodes visited
+    private long nodes;
+    // the number of nodes cut off because a remaining event had too few
+    // venues left
+    private long forwardCheckPrunes;
+    // the number of nodes cut off because the least traffic that the
+    // remaining events must generate would overload a corridor
+    private long boundPrunes;
+    // the number of nodes cut off because they matched a recorded failure
+    private long nogoodHits;
+    // the number of nodes looked up in the nogood cache without a match
+    private long nogoodMisses;
+    // the number of overload checks skipped because a venue dominating the
+    // venue checked would overload a corridor
+    private long dominancePrunes;
+
+    /*
+     * invariant: nodes >= 0 && forwardCheckPrunes >= 0 && boundPrunes >= 0
+     * && nogoodHits >= 0 && nogoodMisses >= 0 && dominancePrunes >= 0
+     */
+
+    /**
+     * Creates a new record in which all counts are zero.
+     */
+    public SearchStatistics() {
+    }
+
+    /**
+     * Returns the number of nodes that the search has visited.
+     * 
+     * @return the number of nodes visited
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of nodes that were cut off by forward checking:
+     * because, given the venues still free and the current load, some of the
+     * remaining events could not all be placed.
+     * 
+     * @return the number of nodes cut off by forward checking
+     */
+    public long getForwardCheckPrunes() {
+        return forwardCheckPrunes;
+    }
+
+    /**
+     * Returns the number of nodes that were cut off because the least traffic
+     * that the remaining events must generate on some corridor, wherever they
+     * are placed, exceeds the capacity left on that corridor.
+     * 
+     * @return the number of nodes cut off by the corridor load bound
+     */
+    public long getBoundPrunes() {
+        return boundPrunes;
+    }
+
+    /**
+     * Returns the number of nodes that were cut off because they matched a
+     * sub-search that was already known to fail (see SearchOptions).
+     * 
+     * @return the number of nogood cache hits
+     */
+    public long getNogoodHits() {
+        return nogoodHits;
+    }
+
+    /**
+     * Returns the number of nodes that were looked up in the nogood cache
+     * without matching a sub-search that was already known to fail.
+     * 
+     * @return the number of nogood cache misses
+     */
+    public long getNogoodMisses() {
+        return nogoodMisses;
+    }
+
+    /**
+     * Returns the number of overload checks that were skipped because a venue
+     * that dominates the venue to be checked had been found to overload a
+     * corridor at the same node (see SearchOptions). The check would have
+     * failed, so no branch of the search is cut off by these skips.
+     * 
+     * @return the number of overload checks skipped by dominance pruning
+     */
+    public long getDominancePrunes() {
+        return dominancePrunes;
+    }
+
+    /**
+     * Records that a node has been visited.
+     */
+    void addNode() {
+        nodes++;
+    }
+
+    /**
+     * Records that a node has been cut off by forward checking.
+     */
+    void addForwardCheckPrune() {
+        forwardCheckPrunes++;
+    }
+
+    /**
+     * Records that a node has been cut off by the corridor load bound.
+     */
+    void addBoundPrune() {
+        boundPrunes++;
+    }
+
+    /**
+     * Records that a node has been cut off by the nogood cache.
+     */
+    void addNogoodHit() {
+        nogoodHits++;
+    }
+
+    /**
+     * Records that a node has been looked up in the nogood cache without a
+     * match.
+     */
+    void addNogoodMiss() {
+        nogoodMisses++;
+    }
+
+    /**
+     * Records that an overload check has been skipped by dominance pruning.
+     */
+    void addDominancePrune() {
+        dominancePrunes++;
+    }
+
+    /**
+     * <p>
+     * This method returns a string of the form: <br>
+     * <br>
+     * 
+     * "NODES nodes, FORWARD forward-check prunes, BOUND bound prunes, HITS
+     * nogood hits, MISSES nogood misses, DOMINANCE overload checks skipped"
+     * <br>
+     * <br>
+     * 
+     * where NODES, FORWARD, BOUND, HITS, MISSES and DOMINANCE are the counts
+     * returned by getNodes, getForwardCheckPrunes, getBoundPrunes,
+     * getNogoodHits, getNogoodMisses and getDominancePrunes respectively.
+     * </p>
+     */
+    @Override
+    public String toString() {
+        return nodes + " nodes, " + forwardCheckPrunes
+                + " forward-check prunes, " + boundPrunes + " bound prunes, "
+                + nogoodHits + " nogood hits, " + nogoodMisses
+                + " nogood misses, " + dominancePrunes
+                + " overload checks skipped";
+    }
+
+}
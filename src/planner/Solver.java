@@ -0,0 +1,281 @@
+package planner;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.*;
+
+/**
+ * <p>
+ * A handle on a search for a safe allocation of events to venues that can be
+ * given a deadline, cancelled and watched while it runs.
+ * </p>
+ *
+ * <p>
+ * A solver searches for the first safe allocation it can find, as
+ * Allocator.allocate does, or, if it is given an objective, for the safe
+ * allocation that minimises the objective, as Allocator.allocateOptimal does.
+ * A run stops early if its deadline passes, if its cancellation token is
+ * cancelled, or if the thread running it is interrupted (the interrupt status
+ * of the thread is left set). These conditions are polled every so many nodes
+ * of the search, so a run stops within a few milliseconds of one of them
+ * holding. The outcome of the run says which of these happened.
+ * </p>
+ *
+ * <p>
+ * A solver may be given a progress listener, which is told, from the thread
+ * running the search, how far the search has got at most once per progress
+ * interval.
+ * </p>
+ *
+ * <p>
+ * The settings of a solver are read when solve() is called, and a solver may
+ * be run more than once. A solver is not safe to use from more than one
+ * thread at a time, except through its cancellation token.
+ * </p>
+ */
+public class Solver {
+
+    // the events to be allocated
+    private final List<Event> events;
+    // the venues to allocate events to
+    private final List<Venue> venues;
+    // the options that control the search
+    private SearchOptions options;
+    // the objective to be minimised, or null to find any safe allocation
+    private Objective objective;
+    // the time allowed for a run in milliseconds, or Long.MAX_VALUE for none
+    private long timeout;
+    // the token that cancels a run, or null for none
+    private CancellationToken token;
+    // the listener told of the progress of a run, or null for none
+    private Consumer<SolverProgress> progressListener;
+    // the least time between reports of progress, in milliseconds
+    private long progressInterval;
+
+    /*
+     * invariant: events != null && venues != null && options != null &&
+     * timeout > 0 && progressInterval > 0
+     */
+
+    /**
+     * Creates a new solver for the problem of allocating the given events to
+     * the given venues, with the default search options, no objective, no
+     * timeout, no cancellation token and no progress listener.
+     *
+     * @param events
+     *            the events to be allocated
+     * @param venues
+     *            the venues to allocate events to
+     * @throws NullPointerException
+     *             if events or venues is null
+     * @require !events.contains(null) && !venues.contains(null) && events does
+     *          not contain duplicate events && venues does not contain
+     *          duplicate venues.
+     * @ensure The solver keeps its own copies of the lists.
+     */
+    public Solver(List<Event> events, List<Venue> venues) {
+        if (events == null || venues == null) {
+            throw new NullPointerException(
+                    "The events and venues cannot be null.");
+        }
+        this.events = new ArrayList<>(events);
+        this.venues = new ArrayList<>(venues);
+        options = new SearchOptions();
+        objective = null;
+        timeout = Long.MAX_VALUE;
+        token = null;
+        progressListener = null;
+        progressInterval = 1000;
+    }
+
+    /**
+     * Sets the options that control the search. They are only used when the
+     * solver has no objective (see setObjective).
+     *
+     * @param options
+     *            the search options
+     * @throws NullPointerException
+     *             if options is null
+     */
+    public void setOptions(SearchOptions options) {
+        if (options == null) {
+            throw new NullPointerException("The options cannot be null.");
+        }
+        this.options = options;
+    }
+
+    /**
+     * Sets the objective that the solver minimises, or null if the solver
+     * should return the first safe allocation it finds. When there is an
+     * objective, none of the search options are used: the branch-and-bound
+     * search of Allocator.allocateOptimal always allocates the events in the
+     * order given, tries the venues in order of their bound, and prunes, but
+     * never uses nogood learning, dominance pruning or decomposition, which
+     * only preserve whether some safe allocation is found, not which one.
+     *
+     * @param objective
+     *            the objective, or null for none
+     */
+    public void setObjective(Objective objective) {
+        this.objective = objective;
+    }
+
+    /**
+     * Sets the time that a run of the solver is allowed, from the call to
+     * solve(). Long.MAX_VALUE means that there is no deadline.
+     *
+     * @param timeout
+     *            the time allowed in milliseconds
+     * @throws IllegalArgumentException
+     *             if timeout <= 0
+     */
+    public void setTimeout(long timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException(
+                    "The timeout must be greater than zero.");
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the token that cancels a run of the solver, or null if only
+     * interrupting the thread running it cancels a run.
+     *
+     * @param token
+     *            the cancellation token, or null for none
+     */
+    public void setCancellationToken(CancellationToken token) {
+        this.token = token;
+    }
+
+    /**
+     * Sets the listener that is told of the progress of a run of the solver,
+     * at most once every given number of milliseconds, or null if no one is to
+     * be told.
+     *
+     * @param progressListener
+     *            the progress listener, or null for none
+     * @param progressInterval
+     *            the least time between reports, in milliseconds
+     * @throws IllegalArgumentException
+     *             if progressInterval <= 0
+     */
+    public void setProgressListener(Consumer<SolverProgress> progressListener,
+            long progressInterval) {
+        if (progressInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "The progress interval must be greater than zero.");
+        }
+        this.progressListener = progressListener;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Runs the solver on the thread that calls this method, and returns how
+     * the run ended.
+     *
+     * @return the outcome of the run, with the allocation it found, if any
+     */
+    public SolverResult solve() {
+        SearchStatistics statistics = new SearchStatistics();
+        Monitor monitor = new Monitor(statistics);
+        if (monitor.getAsBoolean()) {
+            return new SolverResult(monitor.reason, null, statistics);
+        }
+
+        AllocationProblem problem;
+        int[] assignment; // the assignment found, or null if none was found
+        if (objective == null) {
+            problem = AllocationProblem.compile(events, venues, options
+                    .getEventOrder());
+            assignment = Allocator.first(problem, options, statistics,
+                    monitor, depth -> monitor.depth = depth);
+        } else {
+            problem = AllocationProblem.compile(events, venues);
+            if (FeasibilityCheck.check(problem) != null) {
+                return new SolverResult(Outcome.INFEASIBLE, null, statistics);
+            }
+            OptimisingSearch search = new OptimisingSearch(problem, objective,
+                    Long.MAX_VALUE);
+            search.setStatistics(statistics);
+            search.setCancellation(monitor);
+            monitor.depth = search::getDepth;
+            monitor.best = search::getBestValue;
+            assignment = search.optimise();
+        }
+
+        Map<Event, Venue> allocation = (assignment == null ? null : problem
+                .toAllocation(assignment));
+        if (monitor.reason != null) {
+            return new SolverResult(monitor.reason, allocation, statistics);
+        }
+        return new SolverResult(allocation == null ? Outcome.INFEASIBLE
+                : Outcome.FOUND, allocation, statistics);
+    }
+
+    /**
+     * The condition polled by the search of a run, which decides whether the
+     * run should stop and reports its progress.
+     */
+    private class Monitor implements BooleanSupplier {
+
+        // the thread running the search
+        private final Thread thread;
+        // the record of the work done by the search
+        private final SearchStatistics statistics;
+        // the value of System.nanoTime() when the run started
+        private final long start;
+        // the value of System.nanoTime() after which the run stops, or
+        // Long.MAX_VALUE for none
+        private final long deadline;
+        // the value of System.nanoTime() after which progress is next
+        // reported
+        private long nextReport;
+        // the current depth of the search
+        private IntSupplier depth = () -> 0;
+        // the best objective value found by the search
+        private DoubleSupplier best = () -> Double.POSITIVE_INFINITY;
+        // the reason the run stopped, or null if it has not been stopped
+        private Outcome reason;
+
+        /**
+         * Creates a monitor for a run that starts now, on the current thread.
+         *
+         * @require statistics != null
+         */
+        private Monitor(SearchStatistics statistics) {
+            thread = Thread.currentThread();
+            this.statistics = statistics;
+            start = System.nanoTime();
+            deadline = (timeout == Long.MAX_VALUE ? Long.MAX_VALUE : start
+                    + TimeUnit.MILLISECONDS.toNanos(timeout));
+            nextReport = start + TimeUnit.MILLISECONDS.toNanos(
+                    progressInterval);
+        }
+
+        /**
+         * Returns true if the run should stop, recording why, and reports
+         * progress if it is due.
+         */
+        @Override
+        public boolean getAsBoolean() {
+            long now = System.nanoTime();
+            if (thread.isInterrupted() || (token != null && token
+                    .isCancelled())) {
+                reason = Outcome.CANCELLED;
+            } else if (deadline != Long.MAX_VALUE && now - deadline > 0) {
+                reason = Outcome.TIMED_OUT;
+            }
+            if (reason == null && progressListener != null && now
+                    - nextReport >= 0) {
+                progressListener.accept(new SolverProgress(statistics
+                        .getNodes(), depth.getAsInt(), best.getAsDouble(),
+                        TimeUnit.NANOSECONDS.toMillis(now - start)));
+                nextReport = now + TimeUnit.MILLISECONDS.toNanos(
+                        progressInterval);
+            }
+            return reason != null;
+        }
+    }
+
+}
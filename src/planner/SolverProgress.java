@@ -0,0 +1,91 @@
+package planner;
+
+/**
+ * An immutable snapshot of how far a run of a Solver has got, as given to its
+ * progress listener.
+ */
+public class SolverProgress {
+
+    // the number of nodes visited so far
+    private final long nodes;
+    // the number of events placed at the node being visited
+    private final int depth;
+    // the objective value of the best safe allocation found so far
+    private final double bestObjective;
+    // the time since the run started, in milliseconds
+    private final long elapsed;
+
+    /*
+     * invariant: nodes >= 0 && depth >= 0 && elapsed >= 0
+     */
+
+    /**
+     * Creates a new snapshot of progress.
+     * 
+     * @require nodes >= 0 && depth >= 0 && elapsed >= 0
+     */
+    SolverProgress(long nodes, int depth, double bestObjective,
+            long elapsed) {
+        this.nodes = nodes;
+        this.depth = depth;
+        this.bestObjective = bestObjective;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Returns the number of nodes the search has visited so far.
+     * 
+     * @return the number of nodes visited
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of events placed at the node the search is
+     * visiting.
+     * 
+     * @return the current depth of the search
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the objective value of the best safe allocation found so far,
+     * or infinity if none has been found yet or the solver has no objective.
+     * 
+     * @return the best objective value so far
+     */
+    public double getBestObjective() {
+        return bestObjective;
+    }
+
+    /**
+     * Returns the time since the run started.
+     * 
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * <p>
+     * This method returns a string of the form: <br>
+     * <br>
+     * 
+     * "NODES nodes, depth DEPTH, best BEST, ELAPSED ms" <br>
+     * <br>
+     * 
+     * where NODES, DEPTH, BEST and ELAPSED are the values returned by
+     * getNodes, getDepth, getBestObjective and getElapsed respectively.
+     * </p>
+     */
+    @Override
+    public String toString() {
+        return nodes + " nodes, depth " + depth + ", best " + bestObjective
+                + ", " + elapsed + " ms";
+    }
+
+}
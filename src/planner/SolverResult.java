@@ -0,0 +1,69 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * The immutable result of a run of a Solver: how the run ended, the
+ * allocation it found, if any, and the work it did.
+ */
+public class SolverResult {
+
+    // how the run ended
+    private final Outcome outcome;
+    // the allocation found, or null if none was found
+    private final Map<Event, Venue> allocation;
+    // the work done by the run
+    private final SearchStatistics statistics;
+
+    /*
+     * invariant: outcome != null && statistics != null && (outcome ==
+     * Outcome.FOUND implies allocation != null) && (outcome ==
+     * Outcome.INFEASIBLE implies allocation == null)
+     */
+
+    /**
+     * Creates a new result.
+     * 
+     * @require outcome != null && statistics != null && (outcome ==
+     *          Outcome.FOUND implies allocation != null) && (outcome ==
+     *          Outcome.INFEASIBLE implies allocation == null)
+     */
+    SolverResult(Outcome outcome, Map<Event, Venue> allocation,
+            SearchStatistics statistics) {
+        this.outcome = outcome;
+        this.allocation = (allocation == null ? null : Collections
+                .unmodifiableMap(allocation));
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns how the run ended.
+     * 
+     * @return the outcome of the run
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Returns the safe allocation found by the run. This is never null if the
+     * outcome is FOUND, and always null if it is INFEASIBLE. If the run timed
+     * out or was cancelled, it is the best safe allocation found before then
+     * by a solver with an objective, or null.
+     * 
+     * @return an unmodifiable safe allocation of events to venues, or null
+     */
+    public Map<Event, Venue> getAllocation() {
+        return allocation;
+    }
+
+    /**
+     * Returns the work done by the run.
+     * 
+     * @return the statistics of the run
+     */
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+}
@@ -0,0 +1,402 @@
+package planner;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Expands a canonical assignment of the events of a compiled allocation
+ * problem (see AllocationSearch) into all of the assignments that can be
+ * obtained from it by swapping interchangeable events and venues. These are
+ * safe if and only if the canonical assignment is, and every assignment is
+ * obtained from exactly one canonical assignment.
+ * </p>
+ * 
+ * <p>
+ * The expansion is done in two stages, so that no assignment is produced
+ * twice. The events of a canonical assignment fall into groups: the events of
+ * one block of interchangeable events that are placed at venues of one class
+ * of interchangeable venues. First, each group in turn is given a different
+ * set of venues from its class, in increasing order of venue id. Then, within
+ * each block of interchangeable events, the venues are permuted among the
+ * events of the block.
+ * </p>
+ * 
+ * <p>
+ * The assignments are produced one at a time, by iterators that step through
+ * the choices of venues and then the permutations within each block, so the
+ * memory used does not grow with the number of assignments in a class.
+ * </p>
+ */
+class SymmetryExpansion {
+
+    // the problem whose assignments are expanded
+    private final AllocationProblem problem;
+    // for each venue, the ids of the venues interchangeable with it
+    // (including itself), in ascending order
+    private final int[][] equivalents;
+
+    /**
+     * Creates an expansion for the assignments of the given problem.
+     * 
+     * @require problem != null
+     */
+    SymmetryExpansion(AllocationProblem problem) {
+        this.problem = problem;
+        equivalents = new int[problem.venueCount()][];
+        for (int venue = 0; venue < problem.venueCount(); venue++) {
+            int previous = problem.getPreviousEquivalent(venue);
+            int[] members = (previous < 0 ? new int[0] : equivalents[previous]);
+            members = Arrays.copyOf(members, members.length + 1);
+            members[members.length - 1] = venue;
+            for (int member : members) {
+                equivalents[member] = members;
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over all of the assignments obtained from the given
+     * canonical assignment by swapping interchangeable events and venues.
+     * 
+     * @require canonical != null && canonical is a canonical assignment of all
+     *          of the events of the problem
+     * @ensure Returns an iterator that returns each assignment in the symmetry
+     *         class of canonical exactly once (including canonical itself).
+     *         The given array is not modified.
+     */
+    Iterator<int[]> expand(int[] canonical) {
+        return new Expansion(canonical);
+    }
+
+    /**
+     * Returns a spliterator over all of the assignments obtained by expanding
+     * each of the canonical assignments of the given spliterator in turn.
+     * Splitting it splits the given spliterator.
+     * 
+     * @require canonicals != null && canonicals returns only canonical
+     *          assignments of all of the events of the problem
+     */
+    Spliterator<int[]> expandAll(Spliterator<int[]> canonicals) {
+        return new ExpandingSpliterator(canonicals);
+    }
+
+    /**
+     * Returns the groups of the given canonical assignment: for each block of
+     * interchangeable events and each class of interchangeable venues used by
+     * the block, the ids of the events of the block placed at venues of the
+     * class, in ascending order.
+     */
+    private List<int[]> groups(int[] canonical) {
+        List<int[]> groups = new ArrayList<>();
+        int start = 0; // the first event of the current block
+        while (start < canonical.length) {
+            int end = start + 1; // the event after the current block
+            while (end < canonical.length && problem.isSameAsPrevious(end)) {
+                end++;
+            }
+            // the events of the block, by the first venue of their class
+            Map<Integer, List<Integer>> byClass = new LinkedHashMap<>();
+            for (int event = start; event < end; event++) {
+                byClass.computeIfAbsent(equivalents[canonical[event]][0],
+                        first -> new ArrayList<>()).add(event);
+            }
+            for (List<Integer> group : byClass.values()) {
+                groups.add(group.stream().mapToInt(Integer::intValue)
+                        .toArray());
+            }
+            start = end;
+        }
+        return groups;
+    }
+
+    /**
+     * Replaces the given indexes, which are in ascending order, by the next
+     * k-element subset of [0, n) in lexicographic order, if there is one.
+     * 
+     * @require indexes is in ascending order && indexes.length <= n
+     * @ensure Returns true if indexes was advanced, and false (leaving it
+     *         unchanged) if it was the last subset.
+     */
+    private static boolean nextCombination(int[] indexes, int n) {
+        int k = indexes.length;
+        int i = k - 1; // the last index that can still be increased
+        while (i >= 0 && indexes[i] == n - k + i) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        indexes[i]++;
+        for (int j = i + 1; j < k; j++) {
+            indexes[j] = indexes[j - 1] + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the given permutation by the next one in lexicographic order,
+     * or by the first one (the identity) if it was the last.
+     * 
+     * @require permutation is a permutation of [0, permutation.length)
+     * @ensure Returns true if permutation was advanced, and false if it was
+     *         reset to the identity.
+     */
+    private static boolean nextPermutation(int[] permutation) {
+        int i = permutation.length - 2; // the last ascent, if there is one
+        while (i >= 0 && permutation[i] > permutation[i + 1]) {
+            i--;
+        }
+        if (i >= 0) {
+            int j = permutation.length - 1; // the entry to swap with i
+            while (permutation[j] < permutation[i]) {
+                j--;
+            }
+            swap(permutation, i, j);
+        }
+        for (int low = i + 1, high = permutation.length - 1; low < high;
+                low++, high--) {
+            swap(permutation, low, high);
+        }
+        return i >= 0;
+    }
+
+    /**
+     * Swaps the given entries of the given array.
+     */
+    private static void swap(int[] array, int i, int j) {
+        int entry = array[i];
+        array[i] = array[j];
+        array[j] = entry;
+    }
+
+    /**
+     * <p>
+     * An iterator over the symmetry class of one canonical assignment.
+     * </p>
+     * 
+     * <p>
+     * The state is an odometer: a subset of the available venues of each
+     * group's class, and a permutation of each block of interchangeable
+     * events. Each advance steps the permutation of the last block, carrying
+     * to earlier blocks and then to the subsets of the groups, from the last
+     * group backwards, when one wraps around. The memory used is linear in
+     * the number of events, whatever the size of the class.
+     * </p>
+     */
+    private class Expansion implements Iterator<int[]> {
+
+        // the events of each group, in ascending order
+        private final int[][] groups;
+        // for each group, the venues of the class of its canonical venues
+        private final int[][] classes;
+        // for each group, the venues of its class not given to an earlier
+        // group, in ascending order
+        private final int[][] available;
+        // for each group, the indexes in available of the venues given to it
+        private final int[][] chosen;
+        // the first event of each block of interchangeable events
+        private final int[] starts;
+        // for each block, the position in the block of the event whose venue
+        // each event of the block is given
+        private final int[][] permutations;
+        // the assignment with the chosen venues, before permuting the blocks
+        private final int[] assignment;
+        // true if the current state has not yet been returned
+        private boolean pending;
+
+        /*
+         * invariant:
+         * 
+         * for each group g, available[g].length >= groups[g].length, chosen[g]
+         * is in ascending order and assignment[groups[g][i]] ==
+         * available[g][chosen[g][i]] for each i
+         */
+
+        /**
+         * Creates an iterator over the symmetry class of the given canonical
+         * assignment, positioned at the canonical assignment itself.
+         * 
+         * @require canonical != null && canonical is a canonical assignment
+         *          of all of the events of the problem
+         */
+        Expansion(int[] canonical) {
+            List<int[]> groupList = groups(canonical);
+            groups = groupList.toArray(new int[groupList.size()][]);
+            classes = new int[groups.length][];
+            available = new int[groups.length][];
+            chosen = new int[groups.length][];
+            assignment = canonical.clone();
+            for (int group = 0; group < groups.length; group++) {
+                classes[group] = equivalents[canonical[groups[group][0]]];
+                choose(group);
+            }
+            List<Integer> startList = new ArrayList<>();
+            for (int event = 0; event < canonical.length; event++) {
+                if (event == 0 || !problem.isSameAsPrevious(event)) {
+                    startList.add(event);
+                }
+            }
+            starts = startList.stream().mapToInt(Integer::intValue)
+                    .toArray();
+            permutations = new int[starts.length][];
+            for (int block = 0; block < starts.length; block++) {
+                permutations[block] = new int[end(block) - starts[block]];
+                for (int i = 0; i < permutations[block].length; i++) {
+                    permutations[block][i] = i;
+                }
+            }
+            pending = true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending;
+        }
+
+        @Override
+        public int[] next() {
+            if (!pending) {
+                throw new NoSuchElementException();
+            }
+            int[] result = assignment.clone();
+            for (int block = 0; block < starts.length; block++) {
+                int start = starts[block];
+                for (int i = 0; i < permutations[block].length; i++) {
+                    result[start + i] = assignment[start
+                            + permutations[block][i]];
+                }
+            }
+            advance();
+            return result;
+        }
+
+        /**
+         * Moves to the next state of the odometer, or clears pending if the
+         * current state is the last.
+         */
+        private void advance() {
+            for (int block = starts.length - 1; block >= 0; block--) {
+                if (nextPermutation(permutations[block])) {
+                    return;
+                }
+            }
+            for (int group = groups.length - 1; group >= 0; group--) {
+                if (nextCombination(chosen[group], available[group].length)) {
+                    place(group);
+                    for (int later = group + 1; later < groups.length;
+                            later++) {
+                        choose(later);
+                    }
+                    return;
+                }
+            }
+            pending = false;
+        }
+
+        /**
+         * Gives the given group the first subset of the venues of its class
+         * that no earlier group has been given.
+         * 
+         * @require the groups before the given one have been given their
+         *          venues
+         */
+        private void choose(int group) {
+            int[] members = classes[group];
+            // the venues of the class given to an earlier group
+            Set<Integer> taken = new HashSet<>();
+            for (int earlier = 0; earlier < group; earlier++) {
+                if (classes[earlier] == members) {
+                    for (int event : groups[earlier]) {
+                        taken.add(assignment[event]);
+                    }
+                }
+            }
+            int[] free = new int[members.length - taken.size()];
+            int count = 0; // the number of entries of free filled
+            for (int venue : members) {
+                if (!taken.contains(venue)) {
+                    free[count++] = venue;
+                }
+            }
+            available[group] = free;
+            chosen[group] = new int[groups[group].length];
+            for (int i = 0; i < chosen[group].length; i++) {
+                chosen[group][i] = i;
+            }
+            place(group);
+        }
+
+        /**
+         * Sets the venues of the events of the given group in the assignment
+         * to the venues chosen for it.
+         */
+        private void place(int group) {
+            int[] events = groups[group];
+            for (int i = 0; i < events.length; i++) {
+                assignment[events[i]] = available[group][chosen[group][i]];
+            }
+        }
+
+        /**
+         * Returns the event after the last event of the given block.
+         */
+        private int end(int block) {
+            return (block + 1 < starts.length ? starts[block + 1]
+                    : assignment.length);
+        }
+
+    }
+
+    /**
+     * A spliterator that expands each canonical assignment of another
+     * spliterator in turn, holding at most one expansion at a time.
+     */
+    private class ExpandingSpliterator implements Spliterator<int[]> {
+
+        // the canonical assignments still to be expanded
+        private final Spliterator<int[]> canonicals;
+        // the expansion being returned, or null if none has been started
+        private Iterator<int[]> current;
+
+        /**
+         * Creates a spliterator that expands the given canonical assignments.
+         * 
+         * @require canonicals != null
+         */
+        ExpandingSpliterator(Spliterator<int[]> canonicals) {
+            this.canonicals = canonicals;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            while (current == null || !current.hasNext()) {
+                if (!canonicals.tryAdvance(
+                        canonical -> current = expand(canonical))) {
+                    return false;
+                }
+            }
+            action.accept(current.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<int[]> trySplit() {
+            Spliterator<int[]> split = canonicals.trySplit();
+            return (split == null ? null : new ExpandingSpliterator(split));
+        }
+
+        @Override
+        public long estimateSize() {
+            return (current != null && current.hasNext() ? Long.MAX_VALUE
+                    : canonicals.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL | DISTINCT;
+        }
+
+    }
+
+}
@@ -11,6 +11,37 @@ import java.util.*;
  * The traffic on a corridor is measured in non-negative integer units,
  * representing people.
  * </p>
+ * 
+ * <p>
+ * Corridors are identified by their id in the Registry, and the traffic is
+ * kept in int arrays rather than in a map, together with the capacity of each
+ * corridor, so that the safety checks are simple loops over arrays. A record
+ * with traffic on few corridors (the usual case, such as the capacity traffic
+ * of a venue) is sparse: it holds the ids of the corridors with traffic, in
+ * ascending order, and the traffic on each. A record with traffic on a large
+ * share of the ids below its largest one (such as the running total of many
+ * events) switches to being dense: it holds the traffic on every id below
+ * that, indexed by id.
+ * </p>
+ * 
+ * <p>
+ * Copies of a record share its arrays until one of them changes, at which
+ * point the one that changes takes its own copy of the arrays first, so
+ * copying a record (as venues do to keep and hand out their capacity traffic)
+ * takes constant time, and a copy that is only read never costs more.
+ * </p>
+ * 
+ * <p>
+ * The loops over whole arrays (checking whether traffic can be added safely,
+ * and adding, removing and measuring dense records) have no branches in their
+ * bodies and exit early only between blocks of BLOCK positions, so that the
+ * JIT compiler can turn them into SIMD instructions.
+ * </p>
+ * 
+ * <p>
+ * A record keeps count of its corridors that are over capacity, updating it
+ * as the traffic changes, so isSafe takes constant time.
+ * </p>
  */
 public class Traffic {
 
@@ -18,22 +49,51 @@ public class Traffic {
     private final static String LINE_SEPARATOR = System.getProperty(
             "line.separator");
 
-    /*
-     * A mapping from traffic corridors with traffic (i.e. corridors such that
-     * this.getTraffic(c) > 0) to the amount of traffic currently associated
-     * with them.
-     */
-    private TreeMap<Corridor, Integer> trafficMap;
+    // the least number of corridors with traffic for which a record may be
+    // dense
+    private final static int DENSE_MIN_SIZE = 32;
+    // a record becomes dense once at least one in DENSE_FILL of the ids up to
+    // its largest has traffic
+    private final static int DENSE_FILL = 4;
+    // the number of positions the branch-free loops check between early exits
+    private final static int BLOCK = 256;
+
+    // sparse: the ids of the corridors with traffic, in ascending order;
+    // dense: null
+    private int[] ids;
+    // sparse: the traffic on the corridor with each id in ids; dense: the
+    // traffic on the corridor with each id
+    private int[] amounts;
+    // the capacities of the corridors whose traffic is in the same positions
+    // of amounts (zero where a dense record has no traffic)
+    private int[] capacities;
+    // the number of corridors with traffic
+    private int size;
+    // the number of corridors whose traffic is greater than their capacity
+    private int overloaded;
+    // true if the arrays may be shared with another record, and so must be
+    // copied before they are changed
+    private boolean shared;
 
     /*
      * invariant:
      * 
-     * traffic !=null && !traffic.containsValue(null) &&
+     * amounts != null && capacities != null && amounts.length ==
+     * capacities.length &&
+     * 
+     * if ids != null (sparse): ids.length == amounts.length && size <=
+     * ids.length && ids[0 .. size) is strictly ascending && for each i < size,
+     * amounts[i] > 0 is the traffic on the corridor with id ids[i] and
+     * capacities[i] is its capacity &&
      * 
-     * for each corridor c in traffic.keySet(), traffic.get(c) > 0
+     * if ids == null (dense): for each id, amounts[id] >= 0 is the traffic on
+     * the corridor with that id, and capacities[id] is its capacity if
+     * amounts[id] > 0 && size is the number of ids with amounts[id] > 0 &&
      * 
-     * (Note: TreeMaps can't contain null keys so we don't need
-     * !traffic.containsKey(null) as an invariant)
+     * overloaded is the number of corridors with traffic greater than their
+     * capacity &&
+     * 
+     * if any of the arrays is referred to by another record, shared is true
      */
 
     /**
@@ -47,7 +107,11 @@ public class Traffic {
      * </p>
      */
     public Traffic() {
-        trafficMap = new TreeMap<>();
+        ids = new int[0];
+        amounts = new int[0];
+        capacities = new int[0];
+        size = 0;
+        overloaded = 0;
     }
 
     /**
@@ -63,13 +127,24 @@ public class Traffic {
      * instance of the class should be a deep copy of initialTraffic.
      * </p>
      * 
+     * <p>
+     * (The copy shares the arrays of initialTraffic until either of them
+     * changes, so it is made in constant time.)
+     * </p>
+     * 
      * @param initialTraffic
      *            the initial traffic for this instance of the class
      * @throws NullPointerException
      *             if initialTraffic is null
      */
     public Traffic(Traffic initialTraffic) {
-        trafficMap = new TreeMap<Corridor, Integer>(initialTraffic.trafficMap);
+        ids = initialTraffic.ids;
+        amounts = initialTraffic.amounts;
+        capacities = initialTraffic.capacities;
+        size = initialTraffic.size;
+        overloaded = initialTraffic.overloaded;
+        shared = true;
+        initialTraffic.shared = true;
     }
 
     /**
@@ -94,22 +169,114 @@ public class Traffic {
         if (corridor == null) {
             throw new NullPointerException("corridor cannot be null");
         }
-        int currentAmount = 0; // the current amount of traffic on corridor
-        if (trafficMap.get(corridor) != null) {
-            currentAmount = trafficMap.get(corridor);
-        }
-        return currentAmount;
+        return amount(corridor.getId());
     }
 
     /**
+     * <p>
      * Returns the set of all traffic corridors c for which this.getTraffic(c)
      * is greater than zero.
+     * </p>
+     * 
+     * <p>
+     * The set cannot be modified, and is not affected by later changes to
+     * this object. (It shares the arrays of this object, so it is made in
+     * constant time.)
+     * </p>
      * 
      * @return the set of traffic corridors with an amount of traffic that is
      *         greater than zero
      */
     public Set<Corridor> getCorridorsWithTraffic() {
-        return new HashSet<>(trafficMap.keySet());
+        return new CorridorSet(new Traffic(this));
+    }
+
+    /**
+     * Returns the greatest amount of traffic on any corridor, or zero if no
+     * corridor has traffic.
+     */
+    int getMaxTraffic() {
+        int result = 0; // the greatest amount found so far
+        int length = limit();
+        for (int i = 0; i < length; i++) {
+            result = Math.max(result, amounts[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the greatest utilisation (traffic divided by capacity) of any
+     * corridor, or zero if no corridor has traffic.
+     */
+    double getPeakUtilisation() {
+        double result = 0; // the greatest utilisation found so far
+        int length = limit();
+        for (int i = 0; i < length; i++) {
+            // (a dense record may have zero capacity where it has no traffic)
+            result = Math.max(result, (double) amounts[i] / Math.max(
+                    capacities[i], 1));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the total traffic over all corridors.
+     */
+    long getTotalTraffic() {
+        long result = 0; // the total so far
+        int length = limit();
+        for (int i = 0; i < length; i++) {
+            result += amounts[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new record with, on each corridor, the traffic on it in this
+     * record times numerator divided by denominator (truncated).
+     * 
+     * @require denominator > 0 && numerator >= 0 && numerator * amount does
+     *          not overflow for the amount on any corridor
+     * @ensure The result shares the arrays of this record that it can, and
+     *         this record is not changed.
+     */
+    Traffic scale(int numerator, int denominator) {
+        Traffic result = new Traffic(this); // the scaled traffic
+        int length = limit();
+        int[] scaled = new int[amounts.length]; // (the length of ids)
+        int count = 0; // the number of corridors with scaled traffic
+        int scaledOverloaded = 0; // the number of scaled corridors over
+        for (int i = 0; i < length; i++) {
+            scaled[i] = (numerator * amounts[i]) / denominator;
+            count += (scaled[i] > 0 ? 1 : 0);
+            scaledOverloaded += over(scaled[i], capacities[i]);
+        }
+        result.overloaded = scaledOverloaded;
+        if (ids == null || count == size) {
+            // the ids and capacities still apply
+            result.amounts = scaled;
+            result.size = count;
+            return result;
+        }
+        // a sparse record that lost corridors: close up the gaps
+        int[] keptIds = new int[count];
+        int[] keptAmounts = new int[count];
+        int[] keptCapacities = new int[count];
+        int k = 0; // the number of corridors kept so far
+        for (int i = 0; i < length; i++) {
+            if (scaled[i] > 0) {
+                keptIds[k] = ids[i];
+                keptAmounts[k] = scaled[i];
+                keptCapacities[k] = capacities[i];
+                k++;
+            }
+        }
+        result.ids = keptIds;
+        result.amounts = keptAmounts;
+        result.capacities = keptCapacities;
+        result.size = count;
+        result.shared = false;
+        return result;
     }
 
     /**
@@ -132,23 +299,37 @@ public class Traffic {
      *             if other is null
      */
     public boolean sameTraffic(Traffic other) {
-        return trafficMap.equals(other.trafficMap);
+        if (size != other.size) {
+            return false;
+        }
+        if (ids != null && other.ids != null) {
+            return Arrays.equals(ids, 0, size, other.ids, 0, size) && Arrays
+                    .equals(amounts, 0, size, other.amounts, 0, size);
+        }
+        for (int i = next(0); i < limit(); i = next(i + 1)) {
+            if (other.amount(idAt(i)) != amounts[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
+     * <p>
      * Returns true if the traffic on each corridor in this object is less than
      * or equal to the capacity of that corridor, and false otherwise.
+     * </p>
+     * 
+     * <p>
+     * This takes constant time: the number of corridors over capacity is kept
+     * up to date as the traffic changes.
+     * </p>
      * 
      * @return true if the traffic on each corridor in this object is less than
      *         or equal to the capacity of that corridor, and false otherwise.
      */
     public boolean isSafe() {
-        for (Corridor corridor : trafficMap.keySet()) {
-            if (trafficMap.get(corridor) > corridor.getCapacity()) {
-                return false;
-            }
-        }
-        return true;
+        return overloaded == 0;
     }
 
     /**
@@ -179,7 +360,8 @@ public class Traffic {
         if (corridor == null) {
             throw new NullPointerException("Parameter corridor cannot be null");
         }
-        int currentAmount = getTraffic(corridor);
+        int id = corridor.getId();
+        int currentAmount = amount(id);
         // check that the traffic would not become negative.
         if (currentAmount + amount < 0) {
             throw new InvalidTrafficException(
@@ -187,11 +369,7 @@ public class Traffic {
         }
 
         // update the traffic on the corridor by amount
-        if (currentAmount + amount == 0) {
-            trafficMap.remove(corridor);
-        } else {
-            trafficMap.put(corridor, currentAmount + amount);
-        }
+        set(id, corridor.getCapacity(), currentAmount + amount);
     }
 
     /**
@@ -218,10 +396,148 @@ public class Traffic {
      *             if extraTraffic is null
      */
     public void addTraffic(Traffic extraTraffic) {
-        for (Corridor corridor : extraTraffic.trafficMap.keySet()) {
-            trafficMap.put(corridor, getTraffic(corridor) + extraTraffic
-                    .getTraffic(corridor));
+        if (ids != null && extraTraffic.ids != null) {
+            merge(extraTraffic);
+            return;
+        }
+        if (ids == null && extraTraffic.ids == null) {
+            addDense(extraTraffic);
+            return;
+        }
+        // the traffic to add (copied if it would change as it is added)
+        Traffic extra = (extraTraffic == this ? new Traffic(this)
+                : extraTraffic);
+        for (int i = extra.next(0); i < extra.limit(); i = extra.next(i + 1)) {
+            int id = extra.idAt(i);
+            set(id, extra.capacities[i], amount(id) + extra.amounts[i]);
+        }
+    }
+
+    /**
+     * <p>
+     * This method removes all of the traffic defined by parameter
+     * extraTraffic from this object. It undoes a previous call to
+     * addTraffic(extraTraffic).
+     * </p>
+     * 
+     * <p>
+     * That is, for each traffic corridor c, this method updates the traffic on
+     * that corridor in this object by subtracting from it the traffic that
+     * parameter extraTraffic associates with c.
+     * </p>
+     * 
+     * <p>
+     * (Unless this == extraTraffic) this method must not modify the given
+     * parameter.
+     * </p>
+     * 
+     * @param extraTraffic
+     *            the traffic to be removed from this object
+     * @throws NullPointerException
+     *             if extraTraffic is null
+     * @throws InvalidTrafficException
+     *             if removing extraTraffic would result in a negative amount
+     *             of traffic on any corridor. (In that case this object is
+     *             left unchanged.)
+     */
+    public void removeTraffic(Traffic extraTraffic) {
+        if (ids == null && extraTraffic.ids == null && this != extraTraffic) {
+            subtractDense(extraTraffic);
+            return;
+        }
+        Traffic extra = extraTraffic; // the traffic to remove
+        for (int i = extra.next(0); i < extra.limit(); i = extra.next(i + 1)) {
+            if (amount(extra.idAt(i)) < extra.amounts[i]) {
+                throw new InvalidTrafficException(
+                        "Cannot have a negative amount of traffic.");
+            }
+        }
+        if (this == extraTraffic) {
+            ids = new int[0];
+            amounts = new int[0];
+            capacities = new int[0];
+            size = 0;
+            overloaded = 0;
+            shared = false;
+            return;
+        }
+        if (ids == null || extra.ids == null) {
+            for (int i = extra.next(0); i < extra.limit(); i = extra.next(i
+                    + 1)) {
+                int id = extra.idAt(i);
+                set(id, extra.capacities[i], amount(id) - extra.amounts[i]);
+            }
+            return;
         }
+        // both are sparse, and every corridor of extra is in this one:
+        // subtract and close up the gaps
+        unshare();
+        int j = 0; // the position in extra of the next corridor to remove
+        int kept = 0; // the number of corridors kept so far
+        overloaded = 0;
+        for (int i = 0; i < size; i++) {
+            int amount = amounts[i];
+            if (j < extra.size && extra.ids[j] == ids[i]) {
+                amount -= extra.amounts[j++];
+            }
+            if (amount > 0) {
+                ids[kept] = ids[i];
+                amounts[kept] = amount;
+                capacities[kept] = capacities[i];
+                overloaded += over(amount, capacities[i]);
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * <p>
+     * Returns true if adding the traffic defined by parameter extraTraffic to
+     * this object would leave the traffic on each corridor less than or equal
+     * to the capacity of that corridor, and false otherwise. Neither object is
+     * modified.
+     * </p>
+     * 
+     * <p>
+     * Only the corridors on which extraTraffic has traffic are examined, so if
+     * this object is safe then this method returns the same result as
+     * isSafe() would after adding extraTraffic.
+     * </p>
+     * 
+     * @param extraTraffic
+     *            the traffic that would be added to this object
+     * @return true if each corridor with traffic in extraTraffic would be
+     *         within its capacity after the addition, and false otherwise
+     * @throws NullPointerException
+     *             if extraTraffic is null
+     */
+    public boolean canAddSafely(Traffic extraTraffic) {
+        Traffic extra = extraTraffic; // the traffic that would be added
+        if (ids != null && extra.ids != null) {
+            int i = 0; // the position in this record of the corridor reached
+            for (int j = 0; j < extra.size; j++) {
+                while (i < size && ids[i] < extra.ids[j]) {
+                    i++;
+                }
+                int current = (i < size && ids[i] == extra.ids[j] ? amounts[i]
+                        : 0);
+                if (current + extra.amounts[j] > extra.capacities[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (ids == null && extra.ids == null) {
+            return canAddDense(extra);
+        }
+        for (int j = extra.next(0); j < extra.limit(); j = extra.next(j + 1)) {
+            if (amount(extra.idAt(j)) + extra.amounts[j] > extra
+                    .capacities[j]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -259,11 +575,21 @@ public class Traffic {
      */
     @Override
     public String toString() {
-        String result = ""; // the string representation
-        for (Corridor c : trafficMap.keySet()) {
-            result += c + ": " + trafficMap.get(c) + LINE_SEPARATOR;
+        // the positions of the corridors with traffic, in the natural
+        // ordering of their corridors
+        Integer[] positions = new Integer[size];
+        int count = 0; // the number of positions found so far
+        for (int i = next(0); i < limit(); i = next(i + 1)) {
+            positions[count++] = i;
         }
-        return result;
+        Arrays.sort(positions, (a, b) -> Registry.corridor(idAt(a))
+                .compareTo(Registry.corridor(idAt(b))));
+        StringBuilder result = new StringBuilder(); // the representation
+        for (int i : positions) {
+            result.append(Registry.corridor(idAt(i))).append(": ").append(
+                    amounts[i]).append(LINE_SEPARATOR);
+        }
+        return result.toString();
     }
 
     /**
@@ -279,18 +605,435 @@ public class Traffic {
      * @return true if this class is internally consistent, and false otherwise.
      */
     public boolean checkInvariant() {
-        if (trafficMap == null) {
+        if (amounts == null || capacities == null
+                || amounts.length != capacities.length) {
             return false;
         }
-        if (trafficMap.containsValue(null)) {
+        // the number of corridors over capacity
+        int over = 0;
+        for (int i = 0; i < limit(); i++) {
+            over += (amounts[i] > capacities[i] ? 1 : 0);
+        }
+        if (over != overloaded) {
             return false;
         }
-        for (Corridor c : trafficMap.keySet()) {
-            if (trafficMap.get(c) <= 0) {
+        if (ids != null) {
+            if (ids.length != amounts.length || size < 0
+                    || size > ids.length) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if ((i > 0 && ids[i] <= ids[i - 1]) || amounts[i] <= 0
+                        || capacities[i] != Registry.corridor(ids[i])
+                                .getCapacity()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int count = 0; // the number of corridors with traffic
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] < 0) {
+                return false;
+            }
+            if (amounts[id] > 0) {
+                count++;
+                if (capacities[id] != Registry.corridor(id).getCapacity()) {
+                    return false;
+                }
+            }
+        }
+        return count == size;
+    }
+
+    /**
+     * Returns the traffic on the corridor with the given id.
+     */
+    private int amount(int id) {
+        if (ids == null) {
+            return (id < amounts.length ? amounts[id] : 0);
+        }
+        int i = Arrays.binarySearch(ids, 0, size, id);
+        return (i >= 0 ? amounts[i] : 0);
+    }
+
+    /**
+     * Returns the number of positions of amounts that are in use.
+     */
+    private int limit() {
+        return (ids == null ? amounts.length : size);
+    }
+
+    /**
+     * Returns the first position, from the given one on, that holds traffic,
+     * or limit() if there is none.
+     */
+    private int next(int position) {
+        if (ids == null) {
+            while (position < amounts.length && amounts[position] == 0) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns the id of the corridor whose traffic is at the given position.
+     * 
+     * @require 0 <= position < limit()
+     */
+    private int idAt(int position) {
+        return (ids == null ? position : ids[position]);
+    }
+
+    /**
+     * Sets the traffic on the corridor with the given id and capacity to the
+     * given amount.
+     * 
+     * @require amount >= 0
+     */
+    private void set(int id, int capacity, int amount) {
+        unshare();
+        if (ids == null) {
+            if (id >= amounts.length) {
+                if (amount == 0) {
+                    return;
+                }
+                if (id >= DENSE_FILL * (size + 1)) {
+                    toSparse();
+                    set(id, capacity, amount);
+                    return;
+                }
+                int length = Math.max(id + 1, 2 * amounts.length);
+                amounts = Arrays.copyOf(amounts, length);
+                capacities = Arrays.copyOf(capacities, length);
+            }
+            size += (amounts[id] == 0 ? 1 : 0) - (amount == 0 ? 1 : 0);
+            overloaded += over(amount, capacity) - over(amounts[id], capacity);
+            amounts[id] = amount;
+            capacities[id] = capacity;
+            return;
+        }
+        int i = Arrays.binarySearch(ids, 0, size, id);
+        if (i >= 0) {
+            overloaded -= over(amounts[i], capacity);
+            if (amount > 0) {
+                overloaded += over(amount, capacity);
+                amounts[i] = amount;
+                return;
+            }
+            // close up the gap
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            System.arraycopy(amounts, i + 1, amounts, i, size - i - 1);
+            System.arraycopy(capacities, i + 1, capacities, i, size - i - 1);
+            size--;
+            return;
+        }
+        if (amount == 0) {
+            return;
+        }
+        i = -i - 1; // the position at which to insert the corridor
+        if (size == ids.length) {
+            int length = Math.max(4, 2 * size);
+            ids = Arrays.copyOf(ids, length);
+            amounts = Arrays.copyOf(amounts, length);
+            capacities = Arrays.copyOf(capacities, length);
+        }
+        System.arraycopy(ids, i, ids, i + 1, size - i);
+        System.arraycopy(amounts, i, amounts, i + 1, size - i);
+        System.arraycopy(capacities, i, capacities, i + 1, size - i);
+        ids[i] = id;
+        amounts[i] = amount;
+        capacities[i] = capacity;
+        size++;
+        overloaded += over(amount, capacity);
+        toDenseIfFull();
+    }
+
+    /**
+     * Adds the traffic of the given dense record to this dense record, one
+     * id at a time.
+     * 
+     * @require ids == null && extra.ids == null
+     */
+    private void addDense(Traffic extra) {
+        unshare();
+        // (read after unsharing, in case extra is this record)
+        int[] extraAmounts = extra.amounts;
+        int[] extraCapacities = extra.capacities;
+        int length = extraAmounts.length;
+        if (amounts.length < length) {
+            amounts = Arrays.copyOf(amounts, length);
+            capacities = Arrays.copyOf(capacities, length);
+        }
+        for (int id = 0; id < length; id++) {
+            amounts[id] += extraAmounts[id];
+            // each id has one capacity, and zero where it was never used
+            capacities[id] = Math.max(capacities[id], extraCapacities[id]);
+        }
+        size = countPositive(amounts);
+        overloaded = countOver(amounts, capacities);
+    }
+
+    /**
+     * Removes the traffic of the given dense record from this dense record,
+     * one id at a time.
+     * 
+     * @require ids == null && extra.ids == null && extra != this
+     * @throws InvalidTrafficException
+     *             if removing extra would result in a negative amount of
+     *             traffic on any corridor, in which case this record is
+     *             unchanged
+     */
+    private void subtractDense(Traffic extra) {
+        int[] extraAmounts = extra.amounts;
+        int common = Math.min(amounts.length, extraAmounts.length);
+        // negative if extra has more traffic than this record on any id
+        int spare = 0;
+        for (int id = 0; id < common; id++) {
+            spare |= amounts[id] - extraAmounts[id];
+        }
+        for (int id = common; id < extraAmounts.length; id++) {
+            spare |= -extraAmounts[id];
+        }
+        if (spare < 0) {
+            throw new InvalidTrafficException(
+                    "Cannot have a negative amount of traffic.");
+        }
+        unshare();
+        for (int id = 0; id < common; id++) {
+            amounts[id] -= extraAmounts[id];
+        }
+        size = countPositive(amounts);
+        overloaded = countOver(amounts, capacities);
+    }
+
+    /**
+     * Returns true if adding the given dense record to this dense record would
+     * leave each corridor with traffic in extra within its capacity.
+     * 
+     * @require ids == null && extra.ids == null
+     */
+    private boolean canAddDense(Traffic extra) {
+        int[] extraAmounts = extra.amounts;
+        int[] extraCapacities = extra.capacities;
+        int common = Math.min(amounts.length, extraAmounts.length);
+        for (int from = 0; from < extraAmounts.length; from += BLOCK) {
+            int to = Math.min(extraAmounts.length, from + BLOCK);
+            // negative if any corridor of extra in the block would be over
+            // its capacity (-extraAmounts[id] has its sign bit set exactly
+            // where extra has traffic, so it masks out the other ids)
+            int slack = 0;
+            for (int id = from; id < Math.min(to, common); id++) {
+                slack |= (extraCapacities[id] - amounts[id]
+                        - extraAmounts[id]) & -extraAmounts[id];
+            }
+            for (int id = Math.max(from, common); id < to; id++) {
+                slack |= (extraCapacities[id] - extraAmounts[id])
+                        & -extraAmounts[id];
+            }
+            if (slack < 0) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Returns the number of positive entries in the given array.
+     * 
+     * @require values != null && every entry of values is >= 0
+     */
+    private static int countPositive(int[] values) {
+        int result = 0; // the number found so far
+        for (int i = 0; i < values.length; i++) {
+            // (-values[i] is negative exactly when values[i] is positive)
+            result += -values[i] >>> 31;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of positions of the given arrays at which the amount
+     * is greater than the capacity.
+     * 
+     * @require amounts != null && capacities != null && amounts.length ==
+     *          capacities.length
+     */
+    private static int countOver(int[] amounts, int[] capacities) {
+        int result = 0; // the number found so far
+        for (int i = 0; i < amounts.length; i++) {
+            result += over(amounts[i], capacities[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns 1 if the given amount is greater than the given capacity, and 0
+     * otherwise (without a branch).
+     * 
+     * @require amount >= 0 && capacity >= 0
+     */
+    private static int over(int amount, int capacity) {
+        return (capacity - amount) >>> 31;
+    }
+
+    /**
+     * Gives this record its own copy of its arrays, if they may be shared.
+     * 
+     * @ensure !shared
+     */
+    private void unshare() {
+        if (shared) {
+            int length = limit(); // the length of the arrays in use
+            ids = (ids == null ? null : Arrays.copyOf(ids, length));
+            amounts = Arrays.copyOf(amounts, length);
+            capacities = Arrays.copyOf(capacities, length);
+            shared = false;
+        }
+    }
+
+    /**
+     * Adds the traffic of the given sparse record to this sparse record, by
+     * merging their corridors in order of id.
+     * 
+     * @require ids != null && extra.ids != null
+     */
+    private void merge(Traffic extra) {
+        int length = size + extra.size; // the most corridors there can be
+        int[] mergedIds = new int[length];
+        int[] mergedAmounts = new int[length];
+        int[] mergedCapacities = new int[length];
+        int i = 0; // the position in this record
+        int j = 0; // the position in extra
+        int k = 0; // the number of corridors merged
+        overloaded = 0;
+        while (i < size || j < extra.size) {
+            if (j == extra.size || (i < size && ids[i] < extra.ids[j])) {
+                mergedIds[k] = ids[i];
+                mergedAmounts[k] = amounts[i];
+                mergedCapacities[k] = capacities[i];
+                i++;
+            } else if (i == size || extra.ids[j] < ids[i]) {
+                mergedIds[k] = extra.ids[j];
+                mergedAmounts[k] = extra.amounts[j];
+                mergedCapacities[k] = extra.capacities[j];
+                j++;
+            } else {
+                mergedIds[k] = ids[i];
+                mergedAmounts[k] = amounts[i] + extra.amounts[j];
+                mergedCapacities[k] = capacities[i];
+                i++;
+                j++;
+            }
+            overloaded += over(mergedAmounts[k], mergedCapacities[k]);
+            k++;
+        }
+        ids = mergedIds;
+        amounts = mergedAmounts;
+        capacities = mergedCapacities;
+        size = k;
+        shared = false;
+        toDenseIfFull();
+    }
+
+    /**
+     * Makes this sparse record dense, if it has enough corridors and they fill
+     * enough of the ids up to the largest.
+     * 
+     * @require ids != null
+     */
+    private void toDenseIfFull() {
+        if (size < DENSE_MIN_SIZE || ids[size - 1] >= DENSE_FILL * size) {
+            return;
+        }
+        int length = ids[size - 1] + 1;
+        int[] denseAmounts = new int[length];
+        int[] denseCapacities = new int[length];
+        for (int i = 0; i < size; i++) {
+            denseAmounts[ids[i]] = amounts[i];
+            denseCapacities[ids[i]] = capacities[i];
+        }
+        ids = null;
+        amounts = denseAmounts;
+        capacities = denseCapacities;
+    }
+
+    /**
+     * Makes this dense record sparse.
+     * 
+     * @require ids == null
+     */
+    private void toSparse() {
+        int[] sparseIds = new int[Math.max(4, size)];
+        int[] sparseAmounts = new int[sparseIds.length];
+        int[] sparseCapacities = new int[sparseIds.length];
+        int k = 0; // the number of corridors copied
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] > 0) {
+                sparseIds[k] = id;
+                sparseAmounts[k] = amounts[id];
+                sparseCapacities[k] = capacities[id];
+                k++;
+            }
+        }
+        ids = sparseIds;
+        amounts = sparseAmounts;
+        capacities = sparseCapacities;
+    }
+
+    /**
+     * A read-only set of the corridors with traffic in a record that is never
+     * changed.
+     */
+    private static class CorridorSet extends AbstractSet<Corridor> {
+
+        // the record whose corridors are in the set
+        private final Traffic traffic;
+
+        /**
+         * Creates the set of corridors with traffic in the given record.
+         * 
+         * @require traffic != null && traffic is never changed
+         */
+        private CorridorSet(Traffic traffic) {
+            this.traffic = traffic;
+        }
+
+        @Override
+        public int size() {
+            return traffic.size;
+        }
+
+        @Override
+        public boolean contains(Object object) {
+            return (object instanceof Corridor && traffic.getTraffic(
+                    (Corridor) object) > 0);
+        }
+
+        @Override
+        public Iterator<Corridor> iterator() {
+            return new Iterator<Corridor>() {
+                // the position of the next corridor
+                private int position = traffic.next(0);
+
+                @Override
+                public boolean hasNext() {
+                    return position < traffic.limit();
+                }
+
+                @Override
+                public Corridor next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Corridor result = Registry.corridor(traffic.idAt(
+                            position));
+                    position = traffic.next(position + 1);
+                    return result;
+                }
+            };
+        }
+    }
+
 }
@@ -80,12 +80,10 @@ public class Venue {
             throw new IllegalArgumentException(
                     "The capacity of a venue must be greater than zero.");
         }
-        for (Corridor c : capacityTraffic.getCorridorsWithTraffic()) {
-            if (capacityTraffic.getTraffic(c) > capacity) {
-                throw new InvalidTrafficException(
-                        "The traffic on any corridor cannot exceed "
-                                + "the capacity of the venue.");
-            }
+        if (capacityTraffic.getMaxTraffic() > capacity) {
+            throw new InvalidTrafficException(
+                    "The traffic on any corridor cannot exceed "
+                            + "the capacity of the venue.");
         }
         this.name = name;
         this.capacity = capacity;
@@ -110,6 +108,17 @@ public class Venue {
         return capacity;
     }
 
+    /**
+     * Returns the traffic that would be generated by hosting an event of
+     * maximum size (i.e. of size capacity) at the venue.
+     * 
+     * @return a copy of the traffic generated by hosting an event of size
+     *         capacity at the venue
+     */
+    public Traffic getCapacityTraffic() {
+        return new Traffic(capacityTraffic);
+    }
+
     /**
      * Returns true if the size of the event is less than or equal to the
      * capacity of the venue, and false otherwise.
@@ -157,13 +166,9 @@ public class Venue {
             throw new IllegalArgumentException(
                     "The size of the event cannot exceed the venue's capacity");
         }
-        Traffic result = new Traffic(); // the traffic generated by the event
-        for (Corridor c : capacityTraffic.getCorridorsWithTraffic()) {
-            int traffic = (event.getSize() * capacityTraffic.getTraffic(c))
-                    / capacity;
-            result.updateTraffic(c, traffic);
-        }
-        return result;
+        // (K * X) / C on each corridor, sharing what it can with the
+        // capacity traffic
+        return capacityTraffic.scale(event.getSize(), capacity);
     }
 
     /**
@@ -253,12 +258,7 @@ public class Venue {
             return false;
         }
         // the traffic on each corridor must be less than or equal to capacity
-        for (Corridor c : capacityTraffic.getCorridorsWithTraffic()) {
-            if (capacityTraffic.getTraffic(c) > capacity) {
-                return false;
-            }
-        }
-        return true;
+        return capacityTraffic.getMaxTraffic() <= capacity;
     }
 
 }
@@ -0,0 +1,331 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable compiled form of a list of venues, for compiling many
+ * allocation problems with the same venues (see AllocationProblem).
+ * </p>
+ * 
+ * <p>
+ * Venues are identified by their index in the list, and the corridors with
+ * traffic from any of the venues are identified by their index in the natural
+ * ordering of corridors. The model records the capacity of each venue, its
+ * capacity traffic on each of its corridors, and, for each venue, the closest
+ * venue before it that is interchangeable with it (has the same capacity and
+ * capacity traffic). The arrays of a model are shared with the problems
+ * compiled from it, and are never modified, so one model may be used by many
+ * threads at once.
+ * </p>
+ * 
+ * <p>
+ * A venue a dominates a venue b if a can host any event b can host, and
+ * generates no more traffic for it on any corridor: a has at least the
+ * capacity of b, and, on every corridor, a's capacity traffic per person is
+ * no greater than b's (so a uses no corridor that b does not use). Of two
+ * interchangeable venues, the one with the lower id dominates the other. An
+ * event that would overload a corridor at a venue would overload one at every
+ * venue it dominates. The model lists, for each venue, up to MAX_DOMINATORS
+ * of the venues that dominate it and use at least one corridor (finding them
+ * takes time quadratic in the number of venues sharing a corridor, so they
+ * are only found when first asked for). It also gives the venues in an order
+ * in which each venue comes after every venue that dominates it.
+ * </p>
+ */
+class VenueModel {
+
+    // the greatest number of dominators listed for each venue
+    private final static int MAX_DOMINATORS = 4;
+
+    // the venues, indexed by venue id
+    private final Venue[] venues;
+    // the corridors with traffic from any venue, indexed by corridor id
+    private final Corridor[] corridors;
+    // the capacity of each venue
+    private final int[] venueCapacities;
+    // for each venue, the ids of the corridors with capacity traffic
+    private final int[][] venueCorridors;
+    // for each venue, the capacity traffic on each of venueCorridors[v]
+    private final int[][] venueTraffic;
+    // for each venue, the id of the closest venue before it that is
+    // interchangeable with it, or -1 if there is none
+    private final int[] previousEquivalent;
+    // the venue ids, with each venue after every venue that dominates it
+    private final int[] dominanceOrder;
+    // for each venue, some of the venues that dominate it and use at least
+    // one corridor, or null if they have not been found yet
+    private volatile int[][] dominators;
+
+    /*
+     * invariant:
+     * 
+     * venueCapacities.length == venueCorridors.length == venueTraffic.length
+     * == previousEquivalent.length == venues.length &&
+     * 
+     * corridors is in ascending order &&
+     * 
+     * for each venue id v, venueCorridors[v].length == venueTraffic[v].length,
+     * venueCorridors[v] is in ascending order, and venueTraffic[v][k] > 0 is
+     * the capacity traffic of venues[v] on corridors[venueCorridors[v][k]] &&
+     * 
+     * previousEquivalent[v] is the largest id w < v with the same capacity,
+     * venueCorridors and venueTraffic as v, or -1 if there is none &&
+     * 
+     * dominanceOrder holds each venue id once, in non-increasing order of
+     * capacity, then non-decreasing order of total capacity traffic, then
+     * ascending order of id (so each venue comes after its dominators) &&
+     * 
+     * dominators == null or, for each venue id v, dominators[v] holds at most
+     * MAX_DOMINATORS distinct ids of venues that dominate v and use at least
+     * one corridor
+     */
+
+    /**
+     * Creates a model from the given arrays, which are not copied.
+     */
+    private VenueModel(Venue[] venues, Corridor[] corridors,
+            int[][] venueCorridors, int[][] venueTraffic) {
+        this.venues = venues;
+        this.corridors = corridors;
+        this.venueCorridors = venueCorridors;
+        this.venueTraffic = venueTraffic;
+
+        venueCapacities = new int[venues.length];
+        for (int v = 0; v < venues.length; v++) {
+            venueCapacities[v] = venues[v].getCapacity();
+        }
+        previousEquivalent = new int[venues.length];
+        // the last venue seen with each capacity and capacity traffic
+        Map<List<Integer>, Integer> lastEquivalent = new HashMap<>();
+        for (int v = 0; v < venues.length; v++) {
+            List<Integer> key = new ArrayList<>();
+            key.add(venueCapacities[v]);
+            for (int k = 0; k < venueCorridors[v].length; k++) {
+                key.add(venueCorridors[v][k]);
+                key.add(venueTraffic[v][k]);
+            }
+            Integer previous = lastEquivalent.put(key, v);
+            previousEquivalent[v] = (previous == null ? -1 : previous);
+        }
+
+        // the total capacity traffic of each venue
+        long[] totals = new long[venues.length];
+        Integer[] sorted = new Integer[venues.length];
+        for (int v = 0; v < venues.length; v++) {
+            for (int amount : venueTraffic[v]) {
+                totals[v] += amount;
+            }
+            sorted[v] = v;
+        }
+        Arrays.sort(sorted, (a, b) -> venueCapacities[a] != venueCapacities[b]
+                ? Integer.compare(venueCapacities[b], venueCapacities[a])
+                : totals[a] != totals[b] ? Long.compare(totals[a], totals[b])
+                        : Integer.compare(a, b));
+        dominanceOrder = new int[venues.length];
+        for (int i = 0; i < venues.length; i++) {
+            dominanceOrder[i] = sorted[i];
+        }
+    }
+
+    /**
+     * Compiles the given venues.
+     * 
+     * @require venues != null && !venues.contains(null) && venues does not
+     *          contain duplicate venues
+     * @ensure Returns the model of the venues. The given list is not
+     *         modified.
+     */
+    static VenueModel compile(List<Venue> venues) {
+        // the capacity traffic of each of the venues
+        List<Traffic> capacityTraffic = new ArrayList<>(venues.size());
+        // the corridors with traffic from any of the venues
+        SortedSet<Corridor> corridorSet = new TreeSet<>();
+        for (Venue venue : venues) {
+            Traffic traffic = venue.getCapacityTraffic();
+            capacityTraffic.add(traffic);
+            corridorSet.addAll(traffic.getCorridorsWithTraffic());
+        }
+
+        Corridor[] corridors = corridorSet.toArray(new Corridor[0]);
+        // the id of each corridor
+        Map<Corridor, Integer> corridorIds = new HashMap<>();
+        for (int c = 0; c < corridors.length; c++) {
+            corridorIds.put(corridors[c], c);
+        }
+
+        int[][] venueCorridors = new int[venues.size()][];
+        int[][] venueTraffic = new int[venues.size()][];
+        for (int v = 0; v < venues.size(); v++) {
+            Traffic traffic = capacityTraffic.get(v);
+            int[] ids = new int[traffic.getCorridorsWithTraffic().size()];
+            int k = 0; // the number of ids filled in so far
+            for (Corridor corridor : traffic.getCorridorsWithTraffic()) {
+                ids[k++] = corridorIds.get(corridor);
+            }
+            Arrays.sort(ids);
+            int[] amounts = new int[ids.length];
+            for (k = 0; k < ids.length; k++) {
+                amounts[k] = traffic.getTraffic(corridors[ids[k]]);
+            }
+            venueCorridors[v] = ids;
+            venueTraffic[v] = amounts;
+        }
+        return new VenueModel(venues.toArray(new Venue[0]), corridors,
+                venueCorridors, venueTraffic);
+    }
+
+    /**
+     * Returns the number of venues in the model.
+     */
+    int venueCount() {
+        return venues.length;
+    }
+
+    /**
+     * Returns the venues, indexed by venue id. The returned array is shared
+     * and must not be modified.
+     */
+    Venue[] getVenues() {
+        return venues;
+    }
+
+    /**
+     * Returns the corridors with traffic from any venue, indexed by corridor
+     * id. The returned array is shared and must not be modified.
+     */
+    Corridor[] getCorridors() {
+        return corridors;
+    }
+
+    /**
+     * Returns the capacity of each venue. The returned array is shared and
+     * must not be modified.
+     */
+    int[] getVenueCapacities() {
+        return venueCapacities;
+    }
+
+    /**
+     * Returns, for each venue, the ids of the corridors with capacity traffic,
+     * in ascending order. The returned arrays are shared and must not be
+     * modified.
+     */
+    int[][] getVenueCorridors() {
+        return venueCorridors;
+    }
+
+    /**
+     * Returns, for each venue, its capacity traffic on each of its corridors.
+     * The returned arrays are shared and must not be modified.
+     */
+    int[][] getVenueTraffic() {
+        return venueTraffic;
+    }
+
+    /**
+     * Returns, for each venue, the id of the closest venue before it that is
+     * interchangeable with it, or -1 if there is none. The returned array is
+     * shared and must not be modified.
+     */
+    int[] getPreviousEquivalent() {
+        return previousEquivalent;
+    }
+
+    /**
+     * Returns the venue ids in an order in which each venue comes after every
+     * venue that dominates it. The returned array is shared and must not be
+     * modified.
+     */
+    int[] getDominanceOrder() {
+        return dominanceOrder;
+    }
+
+    /**
+     * Returns, for each venue, up to MAX_DOMINATORS of the venues that
+     * dominate it and use at least one corridor, finding them if this is the
+     * first time they are asked for. The returned arrays are shared and must
+     * not be modified.
+     */
+    int[][] getDominators() {
+        int[][] result = dominators;
+        if (result == null) {
+            // two threads may both find them, but they find the same ones
+            result = findDominators();
+            dominators = result;
+        }
+        return result;
+    }
+
+    /**
+     * Finds, for each venue, up to MAX_DOMINATORS of the venues that dominate
+     * it and use at least one corridor, preferring those earliest in the
+     * dominance order.
+     */
+    private int[][] findDominators() {
+        // the position of each venue in the dominance order
+        int[] rank = new int[venues.length];
+        for (int i = 0; i < dominanceOrder.length; i++) {
+            rank[dominanceOrder[i]] = i;
+        }
+        // the venues whose lowest corridor is each corridor, in dominance
+        // order (a dominator of a venue uses only corridors the venue uses,
+        // so its lowest corridor is one of them)
+        List<List<Integer>> byLowest = new ArrayList<>(corridors.length);
+        for (int c = 0; c < corridors.length; c++) {
+            byLowest.add(new ArrayList<>());
+        }
+        for (int venue : dominanceOrder) {
+            if (venueCorridors[venue].length > 0) {
+                byLowest.get(venueCorridors[venue][0]).add(venue);
+            }
+        }
+
+        int[][] result = new int[venues.length][];
+        int[] found = new int[MAX_DOMINATORS]; // the dominators found
+        for (int b = 0; b < venues.length; b++) {
+            int count = 0; // the number of dominators found
+            for (int corridor : venueCorridors[b]) {
+                for (int a : byLowest.get(corridor)) {
+                    if (rank[a] >= rank[b] || count == MAX_DOMINATORS) {
+                        break;
+                    }
+                    if (dominates(a, b)) {
+                        found[count++] = a;
+                    }
+                }
+            }
+            result[b] = Arrays.copyOf(found, count);
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if venue a dominates venue b.
+     * 
+     * @require 0 <= a, b < venueCount() && a != b && a comes before b in the
+     *          dominance order
+     */
+    private boolean dominates(int a, int b) {
+        if (venueCapacities[a] < venueCapacities[b]) {
+            return false;
+        }
+        int[] corridorsA = venueCorridors[a];
+        int[] corridorsB = venueCorridors[b];
+        int j = 0; // the position in corridorsB of the corridor reached
+        for (int k = 0; k < corridorsA.length; k++) {
+            while (j < corridorsB.length && corridorsB[j] < corridorsA[k]) {
+                j++;
+            }
+            if (j == corridorsB.length || corridorsB[j] != corridorsA[k]) {
+                return false; // a uses a corridor that b does not
+            }
+            if ((long) venueTraffic[a][k] * venueCapacities[b]
+                    > (long) venueTraffic[b][j] * venueCapacities[a]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
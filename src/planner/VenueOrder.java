@@ -0,0 +1,33 @@
+package planner;
+
+/**
+ * The order in which the allocation search tries the venues for an event.
+ */
+public enum VenueOrder {
+
+    /**
+     * Venues are tried in the order in which they are given.
+     */
+    INPUT,
+
+    /**
+     * Venues are tried in increasing order of the peak utilisation of their
+     * corridors once the event is placed there: the largest, over the
+     * corridors of the venue, of the fraction of the capacity of the corridor
+     * that would then be in use. The order is worked out afresh each time an
+     * event is placed, from the load at that point in the search.
+     */
+    LEAST_PEAK_UTILISATION,
+
+    /**
+     * Venues are tried in decreasing order of capacity, and venues with the
+     * same capacity in increasing order of their total capacity traffic, so
+     * that a venue is never tried before a venue that dominates it (has at
+     * least its capacity and generates no more traffic on any corridor). The
+     * venues most likely to host an event are tried first, and with
+     * dominance pruning on the search can skip the overload check of a venue
+     * dominated by one that it has found would overload a corridor.
+     */
+    DOMINANT_FIRST
+
+}
@@ -328,8 +328,9 @@ public class VenueReader {
                 throw new FormatException("Line " + lineNumber
                         + ": invalid corridor.");
             }
-            return new Corridor(new Location(startName), new Location(endName),
-                    capacity);
+            // interned, so that the corridors of all venues read are shared
+            return Registry.corridor(Registry.location(startName), Registry
+                    .location(endName), capacity);
         } finally {
             scanner.close();
         }